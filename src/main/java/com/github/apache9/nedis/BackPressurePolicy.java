@@ -0,0 +1,29 @@
+package com.github.apache9.nedis;
+
+/**
+ * What to do when a connection already has the maximum number of in-flight requests, or the
+ * pending outbound bytes exceed the high water mark.
+ * 
+ * @author Apache9
+ */
+public enum BackPressurePolicy {
+
+    /**
+     * Fail the request with {@link com.github.apache9.nedis.exception.BackPressureException}
+     * immediately.
+     */
+    FAIL_FAST,
+
+    /**
+     * Block the calling thread until the request can be sent. The calling thread will not be
+     * blocked if it is the event loop of the connection, {@link #FAIL_FAST} is used instead.
+     */
+    PARK,
+
+    /**
+     * Put the request in a bounded overflow queue and send it later. The request fails with
+     * {@link com.github.apache9.nedis.exception.BackPressureException} if the overflow queue is
+     * also full.
+     */
+    QUEUE
+}
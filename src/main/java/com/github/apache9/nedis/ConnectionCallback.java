@@ -0,0 +1,16 @@
+package com.github.apache9.nedis;
+
+import io.netty.util.concurrent.Future;
+
+/**
+ * The callback of {@link NedisClientPool#withConnection(ConnectionCallback)}.
+ * @author Apache9
+ */
+public interface ConnectionCallback<T> {
+
+    /**
+     * Issue commands on the pinned client. The client is released after the returned future is
+     * done, so the returned future must not be null.
+     */
+    Future<T> call(NedisClient client);
+}
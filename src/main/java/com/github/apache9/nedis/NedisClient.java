@@ -25,4 +25,24 @@ public interface NedisClient extends ConnectionManagement, ConnectionCommands, K
      * General method to execute a redis command.
      */
     Future<Object> execCmd(byte[] cmd, byte[]... params);
+
+    /**
+     * return a view of this client which uses the given timeout for all commands instead of the
+     * timeout of the connection. 0 means no timeout.
+     * <p>
+     * The view shares the same connection with this client. The timeout is counted from the time
+     * a command is issued. A command which is still not sent when timeout will fail with
+     * {@link com.github.apache9.nedis.exception.DeadlineExceededException}, otherwise as with
+     * {@link #setTimeout(long)}, the connection will be closed since all the responses behind can
+     * not be received either.
+     */
+    NedisClient withTimeout(long timeoutMs);
+
+    /**
+     * return a view of this client which uses the given deadline for all commands. The deadline
+     * is based on {@link System#nanoTime()}. A command which is not sent before the deadline
+     * will fail with {@link com.github.apache9.nedis.exception.DeadlineExceededException}.
+     * @see #withTimeout(long)
+     */
+    NedisClient withDeadline(long deadlineNanoTime);
 }
@@ -25,23 +25,39 @@ import static com.github.apache9.nedis.util.NedisUtils.toParams;
 import static com.github.apache9.nedis.util.NedisUtils.toParamsReverse;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoop;
+import io.netty.util.Recycler;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.concurrent.Promise;
+import io.netty.util.internal.PlatformDependent;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import javax.naming.OperationNotSupportedException;
 
+import com.github.apache9.nedis.exception.BackPressureException;
+import com.github.apache9.nedis.exception.DeadlineExceededException;
+import com.github.apache9.nedis.exception.LoadSheddingException;
+import com.github.apache9.nedis.exception.RedisResponseException;
+import com.github.apache9.nedis.handler.InFlightLimiter;
+import com.github.apache9.nedis.handler.MemoryBudget;
 import com.github.apache9.nedis.handler.RedisDuplexHandler;
 import com.github.apache9.nedis.handler.RedisRequest;
+import com.github.apache9.nedis.handler.RedisRequestEncoder;
 import com.github.apache9.nedis.handler.TxnRedisRequest;
 import com.github.apache9.nedis.protocol.BitOp;
+import com.github.apache9.nedis.protocol.CommandClass;
 import com.github.apache9.nedis.protocol.HashEntry;
 import com.github.apache9.nedis.protocol.RedisCommand;
 import com.github.apache9.nedis.protocol.RedisKeyword;
@@ -93,9 +109,84 @@ public class NedisClientImpl implements NedisClient {
 
     private final PromiseConverter<Void> voidConverter;
 
+    // the client which owns the channel, the views created by withTimeout and withDeadline share
+    // the channel with it.
+    private final NedisClientImpl owner;
+
+    // RedisRequest.CONNECTION_TIMEOUT means use the timeout of the connection.
+    private final long timeoutNs;
+
+    // whether timeoutNs is a System.nanoTime() based deadline.
+    private final boolean deadline;
+
+    // false means the commands are only written and the caller must call flush().
+    private final boolean autoFlush;
+
+    // null if the channel has no RedisDuplexHandler, only used to report the load.
+    private final RedisDuplexHandler handler;
+
+    // null means no limit.
+    private final InFlightLimiter limiter;
+
+    // null means no limit.
+    private final MemoryBudget memoryBudget;
+
+    private static final AtomicIntegerFieldUpdater<NedisClientImpl> POOLED_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(NedisClientImpl.class, "pooled");
+
+    // 1 means this client is in the idle queue of an exclusive pool, used by NedisClientPoolImpl to
+    // prevent pooling a client twice.
+    private volatile int pooled;
+
+    // the last time this client is released to the pool by the user, used to evict idle clients.
+    private volatile long releaseNanoTime = System.nanoTime();
+
+    // at most this many requests are written in one run of the drain task so other tasks of the
+    // event loop are not starved.
+    private static final int MAX_WRITES_PER_DRAIN = 1024;
+
+    private static final AtomicIntegerFieldUpdater<NedisClientImpl> DRAIN_SCHEDULED_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(NedisClientImpl.class, "drainScheduled");
+
+    // The requests issued by threads other than the event loop. They are written by one drain task
+    // in the event loop and flushed together, instead of one task and one wakeup per request. Only
+    // used by the owner.
+    private final Queue<Object> writeQueue;
+
+    private final Runnable drainTask;
+
+    // 1 means the drain task is scheduled or running.
+    private volatile int drainScheduled;
+
+    // True between MULTI and EXEC or DISCARD. A transaction is admitted or rejected as a whole by
+    // the limiter and the memory budget when MULTI is written, and the commands after it are
+    // never rejected, otherwise a partial transaction could be committed or the connection could
+    // be left in MULTI. Only used by the owner.
+    private volatile boolean inTxn;
+
+    // not null if MULTI is rejected, then the commands until EXEC or DISCARD are failed with it
+    // without being written. Only used by the owner.
+    private volatile Throwable txnRejectCause;
+
     public NedisClientImpl(Channel channel, NedisClientPool pool) {
         this.channel = channel;
         this.pool = pool;
+        this.owner = this;
+        this.timeoutNs = RedisRequest.CONNECTION_TIMEOUT;
+        this.deadline = false;
+        this.autoFlush = true;
+        this.writeQueue = PlatformDependent.newMpscQueue();
+        this.drainTask = new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        RedisDuplexHandler handler = channel.pipeline().get(RedisDuplexHandler.class);
+        this.handler = handler;
+        this.limiter = handler != null ? handler.getLimiter() : null;
+        this.memoryBudget = handler != null ? handler.getMemoryBudget() : null;
         EventLoop eventLoop = channel.eventLoop();
         this.listConverter = PromiseConverter.toList(eventLoop);
         this.booleanConverter = PromiseConverter.toBoolean(eventLoop);
@@ -115,6 +206,37 @@ public class NedisClientImpl implements NedisClient {
         this.objectListConverter = PromiseConverter.toObjectList(eventLoop);
     }
 
+    private NedisClientImpl(NedisClientImpl owner, long timeoutNs, boolean deadline,
+            boolean autoFlush) {
+        this.channel = owner.channel;
+        this.pool = owner.pool;
+        this.owner = owner;
+        this.timeoutNs = timeoutNs;
+        this.deadline = deadline;
+        this.autoFlush = autoFlush;
+        this.writeQueue = null;
+        this.drainTask = null;
+        this.handler = owner.handler;
+        this.limiter = owner.limiter;
+        this.memoryBudget = owner.memoryBudget;
+        this.listConverter = owner.listConverter;
+        this.booleanConverter = owner.booleanConverter;
+        this.bytesConverter = owner.bytesConverter;
+        this.doubleConverter = owner.doubleConverter;
+        this.longConverter = owner.longConverter;
+        this.objectConverter = owner.objectConverter;
+        this.stringConverter = owner.stringConverter;
+        this.voidConverter = owner.voidConverter;
+        this.arrayScanResultConverter = owner.arrayScanResultConverter;
+        this.mapConverter = owner.mapConverter;
+        this.hashScanResultConverter = owner.hashScanResultConverter;
+        this.setConverter = owner.setConverter;
+        this.sortedSetEntryListConverter = owner.sortedSetEntryListConverter;
+        this.sortedSetScanResultConverter = owner.sortedSetScanResultConverter;
+        this.booleanListConverter = owner.booleanListConverter;
+        this.objectListConverter = owner.objectListConverter;
+    }
+
     @Override
     public Future<Long> append(byte[] key, byte[] value) {
         return execCmd(longConverter, APPEND, key, value);
@@ -191,6 +313,10 @@ public class NedisClientImpl implements NedisClient {
         return execCmd(bytesConverter, BRPOPLPUSH, src, dst, toBytes(timeoutSeconds));
     }
 
+    Channel channel() {
+        return channel;
+    }
+
     @Override
     public Future<byte[]> clientGetname() {
         return execCmd(bytesConverter, CLIENT, GETNAME.raw);
@@ -312,20 +438,46 @@ public class NedisClientImpl implements NedisClient {
         return execCmd(objectConverter, cmd, params);
     }
 
+    // we do not know whether an arbitrary command modifies data, so treat it as a write.
     private <T> Future<T> execCmd(PromiseConverter<T> converter, byte[] cmd, byte[]... params) {
-        Promise<T> promise = converter.newPromise();
-        execCmd0(cmd, params).addListener(converter.newListener(promise));
+        return execCmd(converter, CommandClass.WRITE, cmd, params);
+    }
+
+    private <T> Future<T> execCmd(PromiseConverter<T> converter, CommandClass cmdClass,
+            byte[] cmd, byte[]... params) {
+        if (eventLoop().isShutdown()) {
+            return rejectedFuture();
+        }
+        Promise<Object> rawPromise = eventLoop().newPromise();
+        Promise<T> promise = converter.newPromise(rawPromise);
+        rawPromise.addListener(converter.newListener(promise));
+        execCmd0(rawPromise, cmdClass, cmd, params);
         return promise;
     }
 
     private <T> Future<T> execCmd(PromiseConverter<T> converter, RedisCommand cmd, byte[]... params) {
-        return execCmd(converter, cmd.raw, params);
+        return execCmd(converter, CommandClass.of(cmd), cmd.raw, params);
     }
 
-    private Future<Object> execCmd0(byte[] cmd, byte[]... params) {
-        Promise<Object> promise = eventLoop().newPromise();
-        channel.writeAndFlush(new RedisRequest(promise, toParamsReverse(params, cmd)));
-        return promise;
+    private void execCmd0(Promise<Object> promise, CommandClass cmdClass, byte[] cmd,
+            byte[]... params) {
+        if (timeoutNs == RedisRequest.CONNECTION_TIMEOUT) {
+            write(promise, cmdClass, RedisRequest.newInstance(promise, cmd, params,
+                    RedisRequest.CONNECTION_TIMEOUT, System.nanoTime()));
+        } else {
+            long nanoTime = System.nanoTime();
+            long requestTimeoutNs = requestTimeoutNs(nanoTime);
+            if (requestTimeoutNs < 0 && owner.inTxn) {
+                // a command in a transaction is never dropped, see inTxn.
+                requestTimeoutNs = RedisRequest.CONNECTION_TIMEOUT;
+            }
+            if (requestTimeoutNs < 0) {
+                promise.tryFailure(DeadlineExceededException.INSTANCE);
+            } else {
+                write(promise, cmdClass, RedisRequest.newInstance(promise, cmd, params,
+                        requestTimeoutNs, nanoTime));
+            }
+        }
     }
 
     private <T> Future<ScanResult<T>> execScanCmd(PromiseConverter<ScanResult<T>> converter,
@@ -347,13 +499,51 @@ public class NedisClientImpl implements NedisClient {
     }
 
     private <T> Future<T> execTxnCmd(PromiseConverter<T> converter, RedisCommand cmd) {
+        if (eventLoop().isShutdown()) {
+            return rejectedFuture();
+        }
         Promise<Object> rawPromise = eventLoop().newPromise();
-        channel.writeAndFlush(new TxnRedisRequest(rawPromise, cmd));
-        Promise<T> promise = converter.newPromise();
+        if (timeoutNs == RedisRequest.CONNECTION_TIMEOUT) {
+            write(rawPromise, new TxnRedisRequest(rawPromise, cmd));
+        } else {
+            long nanoTime = System.nanoTime();
+            long requestTimeoutNs = requestTimeoutNs(nanoTime);
+            if (requestTimeoutNs < 0 && owner.inTxn && cmd != MULTI) {
+                // EXEC or DISCARD must be sent to end the transaction, see inTxn.
+                requestTimeoutNs = RedisRequest.CONNECTION_TIMEOUT;
+            }
+            if (requestTimeoutNs < 0) {
+                if (cmd == MULTI && !owner.inTxn) {
+                    rejectTxn(rawPromise, DeadlineExceededException.INSTANCE);
+                } else {
+                    rawPromise.tryFailure(DeadlineExceededException.INSTANCE);
+                }
+            } else {
+                write(rawPromise, new TxnRedisRequest(rawPromise, cmd, requestTimeoutNs,
+                        nanoTime));
+            }
+        }
+        Promise<T> promise = converter.newPromise(rawPromise);
         rawPromise.addListener(converter.newListener(promise));
         return promise;
     }
 
+    // The listeners of a promise are notified in its event loop, so a converted future never
+    // completes if the event loop is shut down. Fail the request with an immediate future instead.
+    private static <T> Future<T> rejectedFuture() {
+        return ImmediateEventExecutor.INSTANCE.newFailedFuture(new RejectedExecutionException(
+                "event loop is shut down"));
+    }
+
+    // return a negative value if the deadline is already exceeded.
+    private long requestTimeoutNs(long nanoTime) {
+        if (!deadline) {
+            return timeoutNs;
+        }
+        long remainingNs = timeoutNs - nanoTime;
+        return remainingNs > 0 ? remainingNs : -1L;
+    }
+
     @Override
     public Future<Boolean> exists(byte[] key) {
         return execCmd(booleanConverter, EXISTS, key);
@@ -400,6 +590,41 @@ public class NedisClientImpl implements NedisClient {
         return execCmd(bytesConverter, GETSET, key, value);
     }
 
+    /**
+     * Write all the commands in one flush and validate the replies together, used to initialize a
+     * new connection. Each command is a byte array whose first element is the command name.
+     */
+    Future<Void> handshake(final List<byte[][]> cmds) {
+        final Promise<Void> promise = eventLoop().newPromise();
+        FutureListener<Object> listener = new FutureListener<Object>() {
+
+            private int remaining = cmds.size();
+
+            @Override
+            public void operationComplete(Future<Object> future) throws Exception {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                } else if (future.getNow() instanceof RedisResponseException) {
+                    promise.tryFailure((RedisResponseException) future.getNow());
+                }
+                // all the raw promises are notified in the event loop.
+                if (--remaining == 0) {
+                    promise.trySuccess(null);
+                }
+            }
+        };
+        for (byte[][] cmd: cmds) {
+            Promise<Object> rawPromise = eventLoop().newPromise();
+            rawPromise.addListener(listener);
+            if (limiter != null) {
+                limiter.forceAcquire();
+            }
+            channel.write(new RedisRequest(rawPromise, cmd));
+        }
+        channel.flush();
+        return promise;
+    }
+
     @Override
     public Future<Long> hdel(byte[] key, byte[]... fields) {
         return execCmd(longConverter, HDEL, toParamsReverse(fields, key));
@@ -567,6 +792,21 @@ public class NedisClientImpl implements NedisClient {
         return execCmd(voidConverter, LTRIM, key, toBytes(startInclusive), toBytes(stopInclusive));
     }
 
+    /**
+     * Flush the commands written by the view returned by {@link #withoutFlush()}.
+     */
+    void flush() {
+        channel.flush();
+    }
+
+    void markReleased() {
+        releaseNanoTime = System.nanoTime();
+    }
+
+    void markUnpooled() {
+        pooled = 0;
+    }
+
     @Override
     public Future<List<byte[]>> mget(byte[]... keys) {
         return execCmd(listConverter, MGET, keys);
@@ -597,6 +837,22 @@ public class NedisClientImpl implements NedisClient {
         return execTxnCmd(voidConverter, MULTI);
     }
 
+    /**
+     * return the number of requests which are sent but not done yet, including the ones still
+     * waiting to be written. Always 0 if the connection has no {@link InFlightLimiter}.
+     */
+    int numOutstanding() {
+        return limiter != null ? limiter.permits() : 0;
+    }
+
+    /**
+     * return the start time of the oldest in-flight request, or
+     * {@link RedisDuplexHandler#NO_IN_FLIGHT} if there is none.
+     */
+    long oldestNanoTime() {
+        return handler != null ? handler.oldestNanoTime() : RedisDuplexHandler.NO_IN_FLIGHT;
+    }
+
     @Override
     public Future<Boolean> persist(byte[] key) {
         return execCmd(booleanConverter, PERSIST, key);
@@ -660,10 +916,14 @@ public class NedisClientImpl implements NedisClient {
     @Override
     public void release() {
         if (pool != null && pool.exclusive()) {
-            pool.release(this);
+            pool.release(owner);
         }
     }
 
+    long releaseNanoTime() {
+        return releaseNanoTime;
+    }
+
     @Override
     public Future<Void> rename(byte[] key, byte[] newKey) {
         return execCmd(voidConverter, RENAME, key, newKey);
@@ -973,6 +1233,19 @@ public class NedisClientImpl implements NedisClient {
         return p;
     }
 
+    boolean tryMarkPooled() {
+        return POOLED_UPDATER.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * return a view of this client which writes the commands without flushing, the caller must
+     * call {@link #flush()} after issuing the commands. Used to write a batch of commands with one
+     * flush.
+     */
+    NedisClientImpl withoutFlush() {
+        return new NedisClientImpl(owner, timeoutNs, deadline, false);
+    }
+
     @Override
     public Future<Long> ttl(byte[] key) {
         return execCmd(longConverter, TTL, key);
@@ -993,6 +1266,215 @@ public class NedisClientImpl implements NedisClient {
         return execCmd(voidConverter, WATCH, keys);
     }
 
+    @Override
+    public NedisClient withDeadline(long deadlineNanoTime) {
+        return new NedisClientImpl(owner, deadlineNanoTime, true, autoFlush);
+    }
+
+    @Override
+    public NedisClient withTimeout(long timeoutMs) {
+        return new NedisClientImpl(owner, TimeUnit.MILLISECONDS.toNanos(timeoutMs), false,
+                autoFlush);
+    }
+
+    private void write(Promise<Object> promise, CommandClass cmdClass, RedisRequest req) {
+        if (owner.inTxn) {
+            writeInTxn(promise, req);
+            return;
+        }
+        if (memoryBudget == null) {
+            if (limiter != null && !limiter.acquire(channel)) {
+                req.recycle();
+                promise.tryFailure(BackPressureException.INSTANCE);
+                return;
+            }
+            doWrite(req);
+            return;
+        }
+        int size = RedisRequestEncoder.serializedSize(req);
+        if (!memoryBudget.tryReserve(cmdClass, size)) {
+            req.recycle();
+            promise.tryFailure(LoadSheddingException.INSTANCE);
+            return;
+        }
+        if (limiter != null && !limiter.acquire(channel)) {
+            memoryBudget.release(size);
+            req.recycle();
+            promise.tryFailure(BackPressureException.INSTANCE);
+            return;
+        }
+        doWrite(req, channel.newPromise(), size);
+    }
+
+    private void write(Promise<Object> promise, TxnRedisRequest req) {
+        if (owner.inTxn) {
+            Throwable cause = owner.txnRejectCause;
+            if (req.getCmd() != MULTI) {
+                owner.txnRejectCause = null;
+                owner.inTxn = false;
+            }
+            if (cause != null) {
+                promise.tryFailure(cause);
+                return;
+            }
+            if (limiter != null) {
+                limiter.forceAcquire();
+            }
+            doWrite(req);
+            return;
+        }
+        if (req.getCmd() != MULTI) {
+            // not in MULTI, the handler will fail it.
+            if (limiter != null && !limiter.acquire(channel)) {
+                promise.tryFailure(BackPressureException.INSTANCE);
+                return;
+            }
+            doWrite(req);
+            return;
+        }
+        // only check whether writes are being shed, the commands in the transaction reserve their
+        // bytes unconditionally.
+        if (memoryBudget != null && !memoryBudget.tryReserve(CommandClass.WRITE, 0)) {
+            rejectTxn(promise, LoadSheddingException.INSTANCE);
+            return;
+        }
+        if (limiter != null && !limiter.acquire(channel)) {
+            rejectTxn(promise, BackPressureException.INSTANCE);
+            return;
+        }
+        owner.inTxn = true;
+        doWrite(req);
+    }
+
+    // Fail MULTI, and the commands after it until EXEC or DISCARD, see inTxn.
+    private void rejectTxn(Promise<Object> promise, Throwable cause) {
+        owner.txnRejectCause = cause;
+        owner.inTxn = true;
+        promise.tryFailure(cause);
+    }
+
+    private void writeInTxn(Promise<Object> promise, RedisRequest req) {
+        Throwable cause = owner.txnRejectCause;
+        if (cause != null) {
+            req.recycle();
+            promise.tryFailure(cause);
+            return;
+        }
+        if (limiter != null) {
+            limiter.forceAcquire();
+        }
+        if (memoryBudget == null) {
+            doWrite(req);
+            return;
+        }
+        int size = RedisRequestEncoder.serializedSize(req);
+        memoryBudget.reserve(size);
+        doWrite(req, channel.newPromise(), size);
+    }
+
+    private void doWrite(Object req) {
+        if (!autoFlush) {
+            channel.write(req);
+        } else if (channel.eventLoop().inEventLoop()) {
+            channel.writeAndFlush(req);
+        } else {
+            owner.submit(req);
+        }
+    }
+
+    // The reserved bytes are released when the write is done. For a queued write the listener is
+    // added when it is drained, so the bytes can be released directly if it is never drained.
+    private void doWrite(Object req, ChannelPromise writePromise, int reservedBytes) {
+        if (!autoFlush) {
+            writePromise.addListener(memoryBudget.releaseOnComplete(reservedBytes));
+            channel.write(req, writePromise);
+        } else if (channel.eventLoop().inEventLoop()) {
+            writePromise.addListener(memoryBudget.releaseOnComplete(reservedBytes));
+            channel.writeAndFlush(req, writePromise);
+        } else {
+            owner.submit(QueuedWrite.newInstance(req, writePromise, reservedBytes));
+        }
+    }
+
+    private void submit(Object req) {
+        writeQueue.offer(req);
+        if (DRAIN_SCHEDULED_UPDATER.compareAndSet(this, 0, 1)) {
+            scheduleDrain();
+        }
+    }
+
+    // Should only be called by the one who sets drainScheduled to 1.
+    private void scheduleDrain() {
+        try {
+            channel.eventLoop().execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            // the event loop is shut down, the queued requests will never be written.
+            failQueued(e);
+        }
+    }
+
+    private void failQueued(Throwable cause) {
+        do {
+            for (Object req; (req = writeQueue.poll()) != null;) {
+                failQueued(req, cause);
+            }
+            drainScheduled = 0;
+            // a request may be submitted after the last poll but before the reset, and its
+            // submitter does not schedule a drain as drainScheduled was still 1.
+        } while (!writeQueue.isEmpty() && DRAIN_SCHEDULED_UPDATER.compareAndSet(this, 0, 1));
+    }
+
+    private void failQueued(Object req, Throwable cause) {
+        if (req instanceof QueuedWrite) {
+            QueuedWrite queuedWrite = (QueuedWrite) req;
+            req = queuedWrite.msg;
+            memoryBudget.release(queuedWrite.reservedBytes);
+            queuedWrite.promise.tryFailure(cause);
+            queuedWrite.recycle();
+        }
+        if (req instanceof RedisRequest) {
+            RedisRequest redisReq = (RedisRequest) req;
+            redisReq.getPromise().tryFailure(cause);
+            redisReq.recycle();
+        } else {
+            ((TxnRedisRequest) req).getPromise().tryFailure(cause);
+        }
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+
+    private void drain() {
+        for (int i = 0;; i++) {
+            Object req = writeQueue.poll();
+            if (req == null) {
+                break;
+            }
+            if (req instanceof QueuedWrite) {
+                QueuedWrite queuedWrite = (QueuedWrite) req;
+                Object msg = queuedWrite.msg;
+                ChannelPromise writePromise = queuedWrite.promise;
+                writePromise.addListener(memoryBudget.releaseOnComplete(queuedWrite.reservedBytes));
+                queuedWrite.recycle();
+                channel.write(msg, writePromise);
+            } else {
+                channel.write(req);
+            }
+            if (i == MAX_WRITES_PER_DRAIN - 1) {
+                // let other tasks run, the task is still marked as scheduled.
+                channel.flush();
+                scheduleDrain();
+                return;
+            }
+        }
+        channel.flush();
+        drainScheduled = 0;
+        // a request may be submitted after the last poll but before the reset.
+        if (!writeQueue.isEmpty() && DRAIN_SCHEDULED_UPDATER.compareAndSet(this, 0, 1)) {
+            scheduleDrain();
+        }
+    }
+
     @Override
     public Future<Long> zadd(byte[] key, double score, byte[] member) {
         return execCmd(longConverter, ZADD, key, toBytes(score), member);
@@ -1188,4 +1670,43 @@ public class NedisClientImpl implements NedisClient {
     public Future<Long> zuniontore(byte[] dst, byte[]... keys) {
         return execCmd(longConverter, ZUNIONSTORE, toParamsReverse(keys, dst));
     }
+
+    // A request with its write promise and the bytes reserved from the memory budget, queued by a
+    // thread other than the event loop.
+    private static final class QueuedWrite {
+
+        private static final Recycler<QueuedWrite> RECYCLER = new Recycler<QueuedWrite>() {
+
+            @Override
+            protected QueuedWrite newObject(Handle handle) {
+                return new QueuedWrite(handle);
+            }
+        };
+
+        private final Recycler.Handle handle;
+
+        Object msg;
+
+        ChannelPromise promise;
+
+        int reservedBytes;
+
+        private QueuedWrite(Recycler.Handle handle) {
+            this.handle = handle;
+        }
+
+        static QueuedWrite newInstance(Object msg, ChannelPromise promise, int reservedBytes) {
+            QueuedWrite queuedWrite = RECYCLER.get();
+            queuedWrite.msg = msg;
+            queuedWrite.promise = promise;
+            queuedWrite.reservedBytes = reservedBytes;
+            return queuedWrite;
+        }
+
+        void recycle() {
+            msg = null;
+            promise = null;
+            RECYCLER.recycle(this, handle);
+        }
+    }
 }
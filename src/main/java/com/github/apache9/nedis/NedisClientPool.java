@@ -2,6 +2,8 @@ package com.github.apache9.nedis;
 
 import io.netty.util.concurrent.Future;
 
+import java.util.List;
+
 /**
  * @author Apache9
  */
@@ -9,11 +11,74 @@ public interface NedisClientPool extends AsyncCloseable {
 
     Future<NedisClient> acquire();
 
+    /**
+     * Acquire a client for executing commands on the given key.
+     * <p>
+     * In key affinity mode, the same key is always mapped to the same connection so the commands
+     * on a key are executed in order. Otherwise it is the same as {@link #acquire()}.
+     */
+    Future<NedisClient> acquire(byte[] key);
+
+    /**
+     * Acquire a client for executing a blocking list command. The client must be released after
+     * the command is done.
+     * <p>
+     * If the pool has a blocking sub pool, the client is taken from it so a blocking command never
+     * occupies a connection used by other commands. Otherwise it is the same as {@link #acquire()}.
+     */
+    Future<NedisClient> acquireBlocking();
+
     void release(NedisClient client);
 
+    /**
+     * Acquire a client, call the callback with it and release the client after the future
+     * returned by the callback is done.
+     * <p>
+     * The callback is executed in the event loop of the client, and the commands issued before it
+     * returns are written in one flush, and will not be interleaved with commands from other
+     * callers even if the connection is shared.
+     */
+    <T> Future<T> withConnection(ConnectionCallback<T> callback);
+
+    /**
+     * Execute the commands issued by the callback in a MULTI/EXEC transaction on one client.
+     * MULTI, the commands and EXEC are written in one flush so a short transaction costs one round
+     * trip. The returned future is the result of EXEC. The transaction is discarded if the
+     * callback throws. It is admitted or rejected as a whole by the in-flight limit and the memory
+     * budget when MULTI is written, so a part of it is never sent.
+     */
+    Future<List<Object>> transaction(TransactionCallback callback);
+
     boolean exclusive();
 
     int numConns();
 
     int numPooledConns();
+
+    /**
+     * Return a future which is done when the minIdle connections opened at build time are
+     * initialized and the preloaded scripts are loaded. Fails if any of them fails.
+     */
+    Future<Void> warmUp();
+
+    /**
+     * return the number of callers waiting for a connection because maxConns is reached.
+     */
+    int numWaiters();
+
+    /**
+     * return the number of acquires which have waited for a connection, including the timed out
+     * ones.
+     */
+    long numAcquireWaits();
+
+    /**
+     * return the total time spent waiting for a connection in nanoseconds.
+     */
+    long totalAcquireWaitNs();
+
+    /**
+     * return the max time spent waiting for a connection in nanoseconds.
+     */
+    long maxAcquireWaitNs();
 }
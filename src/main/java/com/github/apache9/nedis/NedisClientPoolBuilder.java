@@ -2,14 +2,32 @@ package com.github.apache9.nedis;
 
 import static com.github.apache9.nedis.util.NedisUtils.toBytes;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.channel.unix.DomainSocketChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
 
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -20,6 +38,8 @@ public class NedisClientPoolBuilder {
 
     private static Pair<EventLoopGroup, Class<? extends Channel>> DEFAULT_EVENT_LOOP_CONFIG;
 
+    private static Pair<EventLoopGroup, Class<? extends Channel>> DEFAULT_EPOLL_EVENT_LOOP_CONFIG;
+
     private static synchronized Pair<EventLoopGroup, Class<? extends Channel>> defaultEventLoopConfig() {
         if (DEFAULT_EVENT_LOOP_CONFIG == null) {
             DEFAULT_EVENT_LOOP_CONFIG = Pair.<EventLoopGroup, Class<? extends Channel>>of(
@@ -28,24 +48,106 @@ public class NedisClientPoolBuilder {
         return DEFAULT_EVENT_LOOP_CONFIG;
     }
 
-    private EventLoopGroup group;
+    private static synchronized Pair<EventLoopGroup, Class<? extends Channel>> defaultEpollEventLoopConfig() {
+        if (DEFAULT_EPOLL_EVENT_LOOP_CONFIG == null) {
+            DEFAULT_EPOLL_EVENT_LOOP_CONFIG = Pair.<EventLoopGroup, Class<? extends Channel>>of(
+                    new EpollEventLoopGroup(), EpollSocketChannel.class);
+        }
+        return DEFAULT_EPOLL_EVENT_LOOP_CONFIG;
+    }
+
+    EventLoopGroup group;
+
+    Class<? extends Channel> channelClass;
+
+    boolean nativeTransport = true;
+
+    boolean edgeTriggered = true;
+
+    boolean tcpNoDelay = true;
+
+    boolean keepAlive;
+
+    // 0 means use the system default.
+    int sendBufferSize;
+
+    int receiveBufferSize;
 
-    private Class<? extends Channel> channelClass;
+    // 0 means not set.
+    int writeBufferLowWaterMark;
 
-    private long timeoutMs;
+    int writeBufferHighWaterMark;
 
-    private byte[] password;
+    ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
 
-    private int database;
+    // null means use the default of netty, which is AdaptiveRecvByteBufAllocator.
+    RecvByteBufAllocator recvByteBufAllocator;
 
-    private byte[] clientName;
+    long timeoutMs;
 
-    private int maxPooledConns = Math.max(2, 2 * ManagementFactory.getOperatingSystemMXBean()
+    byte[] password;
+
+    int database;
+
+    byte[] clientName;
+
+    int maxPooledConns = Math.max(2, 2 * ManagementFactory.getOperatingSystemMXBean()
             .getAvailableProcessors());
 
-    private boolean exclusive;
+    boolean exclusive;
+
+    SocketAddress remoteAddress;
+
+    int maxInFlight;
+
+    BackPressurePolicy backPressurePolicy = BackPressurePolicy.FAIL_FAST;
+
+    int maxOverflow;
+
+    long parkTimeoutMs = 1000;
+
+    int maxPendingBytes;
+
+    long memoryBudgetBytes;
+
+    boolean eventLoopAffinity = true;
 
-    private SocketAddress remoteAddress;
+    long slowRequestThresholdMs = 10;
+
+    boolean keyAffinity;
+
+    int maxConns;
+
+    int minIdle;
+
+    long acquireTimeoutMs;
+
+    final List<byte[]> preloadScripts = new ArrayList<>();
+
+    boolean hello;
+
+    long healthCheckIntervalMs;
+
+    long maxIdleTimeMs;
+
+    long connectBackoffBaseMs = 100;
+
+    long connectBackoffMaxMs = 10000;
+
+    long autoScaleIntervalMs;
+
+    int scaleUpDepth = 16;
+
+    int scaleDownDepth = 1;
+
+    int maxBlockingConns;
+
+    long flushLatencySloUs;
+
+    int maxFlushBatch = 64;
+
+    // set on the builder of the blocking sub pool, whose connections have no read timeout.
+    boolean blockingSubPool;
 
     public NedisClientPoolBuilder group(EventLoopGroup group) {
         this.group = group;
@@ -57,6 +159,88 @@ public class NedisClientPoolBuilder {
         return this;
     }
 
+    /**
+     * Whether to use the native epoll transport for the default event loop group when it is
+     * available, i.e, on Linux with the native library loaded. Fall back to NIO otherwise. Only
+     * used when group and channel are not set. Default is true.
+     */
+    public NedisClientPoolBuilder nativeTransport(boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+        return this;
+    }
+
+    /**
+     * Whether to use edge-triggered mode for the epoll transport, level-triggered otherwise.
+     * Ignored for other transports. Default is true.
+     */
+    public NedisClientPoolBuilder edgeTriggered(boolean edgeTriggered) {
+        this.edgeTriggered = edgeTriggered;
+        return this;
+    }
+
+    /**
+     * Set TCP_NODELAY of the connections. Default is true since redis commands are small and
+     * latency sensitive.
+     */
+    public NedisClientPoolBuilder tcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Set SO_KEEPALIVE of the connections. Default is false.
+     */
+    public NedisClientPoolBuilder keepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Set SO_SNDBUF of the connections. 0 means use the system default.
+     */
+    public NedisClientPoolBuilder sendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    /**
+     * Set SO_RCVBUF of the connections. 0 means use the system default.
+     */
+    public NedisClientPoolBuilder receiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    /**
+     * Set the write buffer water marks of the connections. Overrides the water marks derived from
+     * {@link #maxPendingBytes(int)}.
+     */
+    public NedisClientPoolBuilder writeBufferWaterMark(int low, int high) {
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * The allocator used to encode the requests and to read the responses. Default is the pooled
+     * allocator which prefers direct buffers.
+     */
+    public NedisClientPoolBuilder allocator(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        return this;
+    }
+
+    /**
+     * The allocator which decides the size of the buffer of each read, e.g,
+     * {@link io.netty.channel.FixedRecvByteBufAllocator} for fixed sizing. Default is
+     * {@link io.netty.channel.AdaptiveRecvByteBufAllocator} which adapts to the size of the
+     * responses.
+     */
+    public NedisClientPoolBuilder recvByteBufAllocator(RecvByteBufAllocator recvByteBufAllocator) {
+        this.recvByteBufAllocator = recvByteBufAllocator;
+        return this;
+    }
+
     public NedisClientPoolBuilder timeoutMs(long timeoutMs) {
         this.timeoutMs = timeoutMs;
         return this;
@@ -87,7 +271,15 @@ public class NedisClientPoolBuilder {
         return this;
     }
 
+    /**
+     * Connect to the given host with the default port 6379, or the unix domain socket if the given
+     * string is an absolute path, e.g, {@code /var/run/redis/redis.sock}.
+     * @see #remoteAddress(SocketAddress)
+     */
     public NedisClientPoolBuilder remoteAddress(String host) {
+        if (host.startsWith("/")) {
+            return remoteAddress(new DomainSocketAddress(host));
+        }
         return remoteAddress(host, 6379);
     }
 
@@ -95,11 +287,248 @@ public class NedisClientPoolBuilder {
         return remoteAddress(new InetSocketAddress(inetHost, inetPort));
     }
 
+    /**
+     * The address of the redis server. A {@link DomainSocketAddress} requires the native epoll
+     * transport, which is used automatically if group and channel are not set.
+     */
     public NedisClientPoolBuilder remoteAddress(SocketAddress remoteAddress) {
         this.remoteAddress = remoteAddress;
         return this;
     }
 
+    /**
+     * The max number of in-flight requests per connection. 0 means no limit.
+     */
+    public NedisClientPoolBuilder maxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * What to do when the in-flight limit or the pending bytes limit is reached. See
+     * {@link #parkTimeoutMs(long)} for the max blocking time of {@link BackPressurePolicy#PARK}.
+     */
+    public NedisClientPoolBuilder backPressurePolicy(BackPressurePolicy backPressurePolicy) {
+        this.backPressurePolicy = backPressurePolicy;
+        return this;
+    }
+
+    /**
+     * The max time to block a caller, only used with {@link BackPressurePolicy#PARK}. The request
+     * fails with {@link com.github.apache9.nedis.exception.BackPressureException} if it still can
+     * not be sent after that. It is independent of the read timeout, so a caller will not block
+     * forever on a stalled connection without a read timeout. 0 means wait forever. Default is
+     * 1000.
+     */
+    public NedisClientPoolBuilder parkTimeoutMs(long parkTimeoutMs) {
+        this.parkTimeoutMs = parkTimeoutMs;
+        return this;
+    }
+
+    /**
+     * The size of the overflow queue per connection, only used with
+     * {@link BackPressurePolicy#QUEUE}.
+     */
+    public NedisClientPoolBuilder maxOverflow(int maxOverflow) {
+        this.maxOverflow = maxOverflow;
+        return this;
+    }
+
+    /**
+     * The max number of pending outbound bytes per connection. A connection becomes unwritable
+     * when exceeded, and becomes writable again when it drops below half of the value. 0 means
+     * use the default water marks of netty.
+     */
+    public NedisClientPoolBuilder maxPendingBytes(int maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+        return this;
+    }
+
+    /**
+     * The max number of bytes of the requests waiting to be written and the replies waiting to be
+     * decoded across all connections of the pool. Once exceeded, new requests are rejected with
+     * {@link com.github.apache9.nedis.exception.LoadSheddingException}, bulk reads first and writes
+     * last, see {@link com.github.apache9.nedis.protocol.CommandClass}. 0 means no limit.
+     */
+    public NedisClientPoolBuilder memoryBudgetBytes(long memoryBudgetBytes) {
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        return this;
+    }
+
+    /**
+     * Whether to prefer the connections bound to the event loop of the caller when acquiring from
+     * an event loop of the pool's group. If true, at least one connection is kept for each event
+     * loop which acquires from the pool, so the requests issued from an event loop never need a
+     * cross-thread handoff. Default is true.
+     */
+    public NedisClientPoolBuilder eventLoopAffinity(boolean eventLoopAffinity) {
+        this.eventLoopAffinity = eventLoopAffinity;
+        return this;
+    }
+
+    /**
+     * Used when choosing a shared connection. The pool prefers the connection with fewer
+     * outstanding requests, and avoids a connection whose oldest request has been in flight
+     * longer than this threshold as it is probably blocked by a slow command. Default is 10ms.
+     */
+    public NedisClientPoolBuilder slowRequestThresholdMs(long slowRequestThresholdMs) {
+        this.slowRequestThresholdMs = slowRequestThresholdMs;
+        return this;
+    }
+
+    /**
+     * Whether to map each key to a fixed connection. The pool keeps maxPooledConns connections,
+     * and {@link NedisClientPool#acquire(byte[])} chooses one by the hash of the key, so the
+     * commands on the same key sent through the pool are executed in order, while different keys
+     * are spread across all connections. Can not be used with exclusive. Default is false.
+     */
+    public NedisClientPoolBuilder keyAffinity(boolean keyAffinity) {
+        this.keyAffinity = keyAffinity;
+        return this;
+    }
+
+    /**
+     * The max number of connections of the pool. Once reached, the callers of
+     * {@link NedisClientPool#acquire()} wait for a connection in FIFO order. 0 means no limit.
+     */
+    public NedisClientPoolBuilder maxConns(int maxConns) {
+        this.maxConns = maxConns;
+        return this;
+    }
+
+    /**
+     * The min number of pooled connections. The pool creates new connections in background when
+     * the number of pooled connections drops below it.
+     */
+    public NedisClientPoolBuilder minIdle(int minIdle) {
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    /**
+     * The max time to wait for a connection when maxConns is reached. The acquire will fail with
+     * {@link com.github.apache9.nedis.exception.AcquireTimeoutException} if timed out. 0 means wait
+     * forever.
+     */
+    public NedisClientPoolBuilder acquireTimeoutMs(long acquireTimeoutMs) {
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Load the script when building the pool, so the first EVALSHA will not fail with NOSCRIPT.
+     */
+    public NedisClientPoolBuilder preloadScript(String script) {
+        this.preloadScripts.add(toBytes(script));
+        return this;
+    }
+
+    /**
+     * Whether to use one HELLO command with AUTH and SETNAME to initialize a connection instead of
+     * AUTH and CLIENT SETNAME. Requires redis 6.0 or above. Default is false.
+     */
+    public NedisClientPoolBuilder hello(boolean hello) {
+        this.hello = hello;
+        return this;
+    }
+
+    /**
+     * The interval of the background health check. Each time, the idle connections are sent a PING
+     * and closed if it fails, and the connections of an exclusive pool which have been idle longer
+     * than maxIdleTimeMs are evicted while keeping minIdle. 0 means disabled.
+     */
+    public NedisClientPoolBuilder healthCheckIntervalMs(long healthCheckIntervalMs) {
+        this.healthCheckIntervalMs = healthCheckIntervalMs;
+        return this;
+    }
+
+    /**
+     * See {@link #healthCheckIntervalMs(long)}. 0 means never evict.
+     */
+    public NedisClientPoolBuilder maxIdleTimeMs(long maxIdleTimeMs) {
+        this.maxIdleTimeMs = maxIdleTimeMs;
+        return this;
+    }
+
+    /**
+     * After a connect failure, no new connection is created for a backoff time which starts from
+     * this value and doubles on each consecutive failure, with jitter. Acquires which need a new
+     * connection fail fast with {@link com.github.apache9.nedis.exception.ConnectBackoffException}
+     * during the backoff, and wait for the single connect attempt made after it. 0 means no backoff.
+     * Default is 100ms.
+     */
+    public NedisClientPoolBuilder connectBackoffBaseMs(long connectBackoffBaseMs) {
+        this.connectBackoffBaseMs = connectBackoffBaseMs;
+        return this;
+    }
+
+    /**
+     * The max backoff time after connect failures. Default is 10s.
+     */
+    public NedisClientPoolBuilder connectBackoffMaxMs(long connectBackoffMaxMs) {
+        this.connectBackoffMaxMs = connectBackoffMaxMs;
+        return this;
+    }
+
+    /**
+     * Enable auto scaling of the shared connections with the given sampling interval. Instead of
+     * opening maxPooledConns connections eagerly, the pool adds a connection when the average
+     * number of outstanding requests per connection is above scaleUpDepth or requests are queued
+     * behind one which has been in flight longer than slowRequestThresholdMs for several samples,
+     * and removes the least loaded one when the average is below scaleDownDepth for a longer
+     * period, within minIdle and maxPooledConns. Only used when not exclusive. 0 means disabled.
+     */
+    public NedisClientPoolBuilder autoScaleIntervalMs(long autoScaleIntervalMs) {
+        this.autoScaleIntervalMs = autoScaleIntervalMs;
+        return this;
+    }
+
+    /**
+     * See {@link #autoScaleIntervalMs(long)}. Default is 16.
+     */
+    public NedisClientPoolBuilder scaleUpDepth(int scaleUpDepth) {
+        this.scaleUpDepth = scaleUpDepth;
+        return this;
+    }
+
+    /**
+     * See {@link #autoScaleIntervalMs(long)}. Default is 1.
+     */
+    public NedisClientPoolBuilder scaleDownDepth(int scaleDownDepth) {
+        this.scaleDownDepth = scaleDownDepth;
+        return this;
+    }
+
+    /**
+     * Use a separated sub pool with at most the given number of connections for blocking list
+     * commands, see {@link NedisClientPool#acquireBlocking()}. The connections have no read timeout
+     * and are never shared with other commands, a blocking command waits for a free one if all of
+     * them are in use. 0 means disabled, the blocking commands use the connections of this pool.
+     */
+    public NedisClientPoolBuilder maxBlockingConns(int maxBlockingConns) {
+        this.maxBlockingConns = maxBlockingConns;
+        return this;
+    }
+
+    /**
+     * Enable adaptive flushing with the given latency SLO. Each connection measures the round trip
+     * time and the interval between requests, and delays a flush by at most the time left by the
+     * SLO after the round trip, to batch the requests expected to arrive within it into one
+     * syscall. Not used by the blocking sub pool. 0 means disabled, always flush immediately.
+     */
+    public NedisClientPoolBuilder flushLatencySloUs(long flushLatencySloUs) {
+        this.flushLatencySloUs = flushLatencySloUs;
+        return this;
+    }
+
+    /**
+     * See {@link #flushLatencySloUs(long)}. Default is 64.
+     */
+    public NedisClientPoolBuilder maxFlushBatch(int maxFlushBatch) {
+        this.maxFlushBatch = maxFlushBatch;
+        return this;
+    }
+
     private void validate() {
         if (group == null && channelClass != null) {
             throw new IllegalArgumentException("group is null but channel is not");
@@ -107,21 +536,221 @@ public class NedisClientPoolBuilder {
         if (channelClass == null && group != null) {
             throw new IllegalArgumentException("channel is null but group is not");
         }
-        if (group == null) {
-            Pair<EventLoopGroup, Class<? extends Channel>> defaultEventLoopConfig = defaultEventLoopConfig();
-            group = defaultEventLoopConfig.getLeft();
-            channelClass = defaultEventLoopConfig.getRight();
-        }
         if (remoteAddress == null) {
             throw new IllegalArgumentException("remoteAddress is not set");
         }
+        boolean domainSocket = remoteAddress instanceof DomainSocketAddress;
+        if (group == null) {
+            if (domainSocket) {
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalArgumentException(
+                            "unix domain socket requires the native epoll transport",
+                            Epoll.unavailabilityCause());
+                }
+                group = defaultEpollEventLoopConfig().getLeft();
+                channelClass = EpollDomainSocketChannel.class;
+            } else {
+                Pair<EventLoopGroup, Class<? extends Channel>> defaultEventLoopConfig;
+                if (nativeTransport && Epoll.isAvailable()) {
+                    defaultEventLoopConfig = defaultEpollEventLoopConfig();
+                } else {
+                    defaultEventLoopConfig = defaultEventLoopConfig();
+                }
+                group = defaultEventLoopConfig.getLeft();
+                channelClass = defaultEventLoopConfig.getRight();
+            }
+        }
+        if (domainSocket && !DomainSocketChannel.class.isAssignableFrom(channelClass)) {
+            throw new IllegalArgumentException(channelClass.getName()
+                    + " can not connect to unix domain socket " + remoteAddress);
+        }
+        if (keyAffinity && exclusive) {
+            throw new IllegalArgumentException("keyAffinity can not be used with exclusive");
+        }
+        if (keyAffinity && maxPooledConns <= 0) {
+            throw new IllegalArgumentException("maxPooledConns must be positive when using "
+                    + "keyAffinity");
+        }
+        if (maxConns > 0 && minIdle > maxConns) {
+            throw new IllegalArgumentException("minIdle " + minIdle + " is larger than maxConns "
+                    + maxConns);
+        }
+        if (minIdle > maxPooledConns) {
+            throw new IllegalArgumentException("minIdle " + minIdle
+                    + " is larger than maxPooledConns " + maxPooledConns);
+        }
+        if (connectBackoffBaseMs > 0 && connectBackoffMaxMs < connectBackoffBaseMs) {
+            throw new IllegalArgumentException("connectBackoffMaxMs " + connectBackoffMaxMs
+                    + " is less than connectBackoffBaseMs " + connectBackoffBaseMs);
+        }
+        if (autoScaleIntervalMs > 0) {
+            if (exclusive || keyAffinity) {
+                throw new IllegalArgumentException(
+                        "auto scaling can only be used with shared connections");
+            }
+            if (scaleDownDepth >= scaleUpDepth) {
+                throw new IllegalArgumentException("scaleDownDepth " + scaleDownDepth
+                        + " must be less than scaleUpDepth " + scaleUpDepth);
+            }
+        }
+        if (allocator == null) {
+            throw new IllegalArgumentException("allocator is null");
+        }
+        if (sendBufferSize < 0 || receiveBufferSize < 0) {
+            throw new IllegalArgumentException("negative socket buffer size, sendBufferSize "
+                    + sendBufferSize + ", receiveBufferSize " + receiveBufferSize);
+        }
+        if (writeBufferLowWaterMark < 0 || writeBufferHighWaterMark < writeBufferLowWaterMark) {
+            throw new IllegalArgumentException("invalid write buffer water mark, low "
+                    + writeBufferLowWaterMark + ", high " + writeBufferHighWaterMark);
+        }
+        if (flushLatencySloUs < 0) {
+            throw new IllegalArgumentException("flushLatencySloUs " + flushLatencySloUs
+                    + " is negative");
+        }
+        if (flushLatencySloUs > 0 && maxFlushBatch <= 0) {
+            throw new IllegalArgumentException("maxFlushBatch must be positive when using "
+                    + "adaptive flushing");
+        }
+        if (maxBlockingConns < 0) {
+            throw new IllegalArgumentException("maxBlockingConns " + maxBlockingConns
+                    + " is negative");
+        }
+        if (backPressurePolicy == null) {
+            throw new IllegalArgumentException("backPressurePolicy is null");
+        }
+        if (parkTimeoutMs < 0) {
+            throw new IllegalArgumentException("parkTimeoutMs " + parkTimeoutMs + " is negative");
+        }
+        if (backPressurePolicy == BackPressurePolicy.QUEUE && maxInFlight > 0 && maxOverflow <= 0) {
+            throw new IllegalArgumentException("maxOverflow must be positive when using "
+                    + BackPressurePolicy.QUEUE);
+        }
+    }
+
+    // the bootstrap without group, the pool will clone it and set the group or a event loop.
+    Bootstrap bootstrapTemplate() {
+        Bootstrap bootstrap = new Bootstrap().channel(channelClass).remoteAddress(remoteAddress)
+                .option(ChannelOption.ALLOCATOR, allocator);
+        if (recvByteBufAllocator != null) {
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, recvByteBufAllocator);
+        }
+        if (SocketChannel.class.isAssignableFrom(channelClass)) {
+            bootstrap.option(ChannelOption.TCP_NODELAY, tcpNoDelay);
+            bootstrap.option(ChannelOption.SO_KEEPALIVE, keepAlive);
+            if (sendBufferSize > 0) {
+                bootstrap.option(ChannelOption.SO_SNDBUF, sendBufferSize);
+            }
+            if (receiveBufferSize > 0) {
+                bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize);
+            }
+        }
+        if (EpollSocketChannel.class.isAssignableFrom(channelClass)
+                || EpollDomainSocketChannel.class.isAssignableFrom(channelClass)) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, edgeTriggered ? EpollMode.EDGE_TRIGGERED
+                    : EpollMode.LEVEL_TRIGGERED);
+        }
+        if (timeoutMs > 0) {
+            bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                    (int) Math.min(Integer.MAX_VALUE, timeoutMs));
+        }
+        int low, high;
+        if (writeBufferHighWaterMark > 0) {
+            low = writeBufferLowWaterMark;
+            high = writeBufferHighWaterMark;
+        } else {
+            low = maxPendingBytes / 2;
+            high = maxPendingBytes;
+        }
+        if (high > 0) {
+            // The options are applied in order and netty rejects a high water mark which is less
+            // than the current low water mark(and vice versa), so the order depends on the default
+            // water marks which are 32K and 64K.
+            if (high >= 32 * 1024) {
+                bootstrap.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, high);
+                bootstrap.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, low);
+            } else {
+                bootstrap.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, low);
+                bootstrap.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, high);
+            }
+        }
+        return bootstrap;
+    }
+
+    // the builder of the sub pool for blocking commands, it shares the event loop group and the
+    // connection settings with this pool.
+    NedisClientPoolBuilder blockingPoolBuilder() {
+        NedisClientPoolBuilder builder = new NedisClientPoolBuilder();
+        builder.group = group;
+        builder.channelClass = channelClass;
+        builder.edgeTriggered = edgeTriggered;
+        builder.tcpNoDelay = tcpNoDelay;
+        builder.keepAlive = keepAlive;
+        builder.sendBufferSize = sendBufferSize;
+        builder.receiveBufferSize = receiveBufferSize;
+        builder.writeBufferLowWaterMark = writeBufferLowWaterMark;
+        builder.writeBufferHighWaterMark = writeBufferHighWaterMark;
+        builder.maxPendingBytes = maxPendingBytes;
+        builder.allocator = allocator;
+        builder.recvByteBufAllocator = recvByteBufAllocator;
+        builder.remoteAddress = remoteAddress;
+        builder.timeoutMs = timeoutMs;
+        builder.password = password;
+        builder.database = database;
+        builder.clientName = clientName;
+        builder.hello = hello;
+        builder.exclusive = true;
+        builder.eventLoopAffinity = eventLoopAffinity;
+        builder.maxPooledConns = maxBlockingConns;
+        builder.maxConns = maxBlockingConns;
+        builder.acquireTimeoutMs = acquireTimeoutMs;
+        builder.healthCheckIntervalMs = healthCheckIntervalMs;
+        builder.maxIdleTimeMs = maxIdleTimeMs;
+        builder.connectBackoffBaseMs = connectBackoffBaseMs;
+        builder.connectBackoffMaxMs = connectBackoffMaxMs;
+        builder.blockingSubPool = true;
+        return builder;
     }
 
     public NedisClientPool build() {
         validate();
-        return new NedisClientPoolImpl(new Bootstrap().group(group).channel(channelClass)
-                .remoteAddress(remoteAddress), timeoutMs, password, database, clientName,
-                maxPooledConns, exclusive);
+        return new NedisClientPoolImpl(this);
+    }
+
+    /**
+     * Build a {@link NedisMultiDbPool} for the databases from 0 to numDatabases - 1. The pool of
+     * the database set by {@link #database(int)} is created eagerly, others are created on first
+     * use with the same settings.
+     */
+    public NedisMultiDbPool buildMultiDb(int numDatabases) {
+        validate();
+        if (database < 0 || database >= numDatabases) {
+            throw new IllegalArgumentException("database " + database + " is out of range [0, "
+                    + numDatabases + ")");
+        }
+        return new NedisMultiDbPoolImpl(this, numDatabases);
+    }
+
+    /**
+     * Build the pool and return a future which is done when the pool is warmed up, see
+     * {@link NedisClientPool#warmUp()}. The pool will be closed if it fails to warm up.
+     */
+    public Future<NedisClientPool> warmUp() {
+        final NedisClientPool pool = build();
+        final Promise<NedisClientPool> promise = group.next().newPromise();
+        pool.warmUp().addListener(new FutureListener<Void>() {
+
+            @Override
+            public void operationComplete(Future<Void> future) throws Exception {
+                if (future.isSuccess()) {
+                    promise.trySuccess(pool);
+                } else {
+                    pool.close();
+                    promise.tryFailure(future.cause());
+                }
+            }
+        });
+        return promise;
     }
 
     private NedisClientPoolBuilder() {}
@@ -1,248 +1,1486 @@
 package com.github.apache9.nedis;
 
+import static com.github.apache9.nedis.protocol.RedisCommand.AUTH;
+import static com.github.apache9.nedis.protocol.RedisCommand.CLIENT;
+import static com.github.apache9.nedis.protocol.RedisCommand.HELLO;
+import static com.github.apache9.nedis.protocol.RedisCommand.SELECT;
+import static com.github.apache9.nedis.protocol.RedisKeyword.SETNAME;
+import static com.github.apache9.nedis.util.NedisUtils.toBytes;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.timeout.TimeoutException;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.concurrent.Promise;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import com.github.apache9.nedis.exception.AcquireTimeoutException;
+import com.github.apache9.nedis.exception.BackPressureException;
+import com.github.apache9.nedis.exception.ConnectBackoffException;
+import com.github.apache9.nedis.exception.RedisResponseException;
+import com.github.apache9.nedis.handler.FlushController;
+import com.github.apache9.nedis.handler.InFlightLimiter;
+import com.github.apache9.nedis.handler.MemoryBudget;
 import com.github.apache9.nedis.handler.RedisDuplexHandler;
 import com.github.apache9.nedis.handler.RedisRequestEncoder;
 import com.github.apache9.nedis.handler.RedisResponseDecoder;
-import com.github.apache9.nedis.util.NedisClientHashSet;
+import com.github.apache9.nedis.protocol.RedisKeyword;
 
 /**
  * @author Apache9
  */
 public class NedisClientPoolImpl implements NedisClientPool {
 
+    private static final NedisClient[] EMPTY_CONNS = new NedisClient[0];
+
+    private static final byte[] DEFAULT_USER = toBytes("default");
+
+    private static final long DEFAULT_PING_TIMEOUT_MS = 1000;
+
+    private static final long CLOSE_CHECK_INTERVAL_MS = 10;
+
+    // larger than any possible number of outstanding requests of a connection.
+    private static final long STUCK_PENALTY = 1L << 32;
+
+    private final EventLoopGroup group;
+
     private final Bootstrap bootstrap;
 
-    private final byte[] password;
+    // the event loops of the group, and the bootstraps bound to them.
+    private final EventLoop[] loops;
 
-    private final int database;
+    private final Bootstrap[] loopBootstraps;
 
-    private final byte[] clientName;
+    // AUTH, SELECT and CLIENT SETNAME, or HELLO and SELECT, sent in one flush when a connection
+    // is established.
+    private final List<byte[][]> handshakeCmds;
 
     private final int maxPooledConns;
 
     private final boolean exclusive;
 
-    private final NedisClientHashSet pool;
+    private final boolean eventLoopAffinity;
+
+    // a connection whose oldest request has been in flight longer than this is considered stuck.
+    private final long slowRequestThresholdNs;
+
+    // The connections shared by all callers, grouped by event loop, only used when not exclusive.
+    // Copy on write, and modified by CAS.
+    private final AtomicReference<NedisClient[]>[] sharedConns;
+
+    private final AtomicInteger numSharedConns = new AtomicInteger();
+
+    // The connections being created for an event loop which has no shared connections. Only
+    // accessed in the event loop itself.
+    private final Future<?>[] pendingLoopConns;
+
+    // the idle connections grouped by event loop, only used when exclusive.
+    private final Queue<NedisClientImpl>[] idleConns;
+
+    private final AtomicInteger numIdleConns = new AtomicInteger();
+
+    // the connection of each key stripe, only used in key affinity mode, null otherwise. A stripe
+    // is replaced with a new connection if it fails or is closed.
+    private final AtomicReferenceArray<Future<NedisClient>> stripes;
 
     private final Promise<Void> closePromise;
 
-    private int numConns;
+    private final MemoryBudget memoryBudget;
+
+    private final AtomicInteger numConns = new AtomicInteger();
+
+    // 0 means no limit.
+    private final int maxConns;
+
+    private final int minIdle;
+
+    // 0 means wait forever.
+    private final long acquireTimeoutNs;
+
+    // the callers waiting for a connection when maxConns is reached, served in FIFO order.
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger numWaiters = new AtomicInteger();
+
+    // the connections being created for the waiters.
+    private final AtomicInteger numWaiterConnects = new AtomicInteger();
+
+    // the connections being created to keep minIdle.
+    private final AtomicInteger numIdleConnects = new AtomicInteger();
+
+    private final AtomicLong numAcquireWaits = new AtomicLong();
+
+    private final AtomicLong totalAcquireWaitNs = new AtomicLong();
+
+    private final AtomicLong maxAcquireWaitNs = new AtomicLong();
+
+    // done when the minIdle connections opened at build time are initialized and the scripts are
+    // loaded.
+    private final Future<Void> warmUpFuture;
+
+    // 0 means never evict idle connections.
+    private final long maxIdleTimeNs;
+
+    private final long pingTimeoutMs;
+
+    // null if health checking is disabled.
+    private final ScheduledFuture<?> healthCheckFuture;
+
+    // 0 means no backoff.
+    private final long connectBackoffBaseNs;
+
+    private final long connectBackoffMaxNs;
 
-    private boolean closed = false;
+    // the number of consecutive failed connect rounds, reset when a connection is established. A
+    // round is a probe, or a burst of connects started together, see connectFailed.
+    private final AtomicInteger connectFailures = new AtomicInteger();
 
-    public NedisClientPoolImpl(Bootstrap bootstrap, final long timeoutMs, byte[] password,
+    private volatile Throwable lastConnectFailure;
+
+    // no new connection is created before this time if connectFailures is not 0.
+    private volatile long retryNanoTime;
+
+    // the only connect attempt allowed after the backoff, others wait for it.
+    private final AtomicReference<Future<NedisClient>> probeConnect = new AtomicReference<>();
+
+    // null if auto scaling is disabled.
+    private final AutoScaler autoScaler;
+
+    // the sub pool for blocking commands, null if disabled.
+    private final NedisClientPoolImpl blockingPool;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param bootstrap should have the group, the channel and the remote address set.
+     * @deprecated use {@link NedisClientPoolBuilder} instead.
+     */
+    @Deprecated
+    public NedisClientPoolImpl(Bootstrap bootstrap, long timeoutMs, byte[] password,
             int database, byte[] clientName, int maxPooledConns, boolean exclusive) {
-        this.bootstrap = bootstrap.handler(new ChannelInitializer<Channel>() {
+        this(legacyBuilder(bootstrap, timeoutMs, password, database, clientName, maxPooledConns,
+                exclusive), database, null, bootstrap);
+    }
 
-            @Override
-            protected void initChannel(Channel ch) throws Exception {
-                ch.pipeline().addLast(new RedisRequestEncoder(), new RedisResponseDecoder(),
-                        new RedisDuplexHandler(TimeUnit.MILLISECONDS.toNanos(timeoutMs)));
+    NedisClientPoolImpl(NedisClientPoolBuilder builder) {
+        this(builder, builder.database, null);
+    }
+
+    NedisClientPoolImpl(NedisClientPoolBuilder builder, int database, NedisClientPoolImpl sibling) {
+        this(builder, database, sibling, null);
+    }
+
+    /**
+     * Create a pool for the given database. If sibling is not null, the new pool shares the
+     * bootstraps and the memory budget with it. If bootstrap is not null, it is used instead of
+     * the one created from the builder.
+     */
+    @SuppressWarnings("unchecked")
+    private NedisClientPoolImpl(NedisClientPoolBuilder builder, int database,
+            NedisClientPoolImpl sibling, Bootstrap bootstrap) {
+        this.group = builder.group;
+        List<EventLoop> loopList = new ArrayList<>();
+        for (EventExecutor executor: group) {
+            loopList.add((EventLoop) executor);
+        }
+        this.loops = loopList.toArray(new EventLoop[0]);
+        if (sibling != null) {
+            this.memoryBudget = sibling.memoryBudget;
+            this.bootstrap = sibling.bootstrap;
+            this.loopBootstraps = sibling.loopBootstraps;
+        } else {
+            this.memoryBudget = builder.memoryBudgetBytes > 0 ? new MemoryBudget(
+                    builder.memoryBudgetBytes) : null;
+            // a blocking command may wait forever, so the connections of the blocking sub pool
+            // have no read timeout.
+            Bootstrap template = newBootstrapTemplate(bootstrap != null ? bootstrap
+                    : builder.bootstrapTemplate(), builder, builder.blockingSubPool ? 0L
+                    : builder.timeoutMs, memoryBudget);
+            this.loopBootstraps = new Bootstrap[loops.length];
+            if (bootstrap != null) {
+                // the group of a bootstrap can not be changed, so event loop affinity is disabled
+                // for a pool created from a bootstrap, see legacyBuilder.
+                this.bootstrap = template;
+                Arrays.fill(loopBootstraps, template);
+            } else {
+                this.bootstrap = template.clone().group(group);
+                for (int i = 0; i < loops.length; i++) {
+                    loopBootstraps[i] = template.clone().group(loops[i]);
+                }
             }
+        }
+        this.sharedConns = new AtomicReference[loops.length];
+        this.idleConns = new Queue[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            sharedConns[i] = new AtomicReference<>(EMPTY_CONNS);
+            idleConns[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.pendingLoopConns = new Future<?>[loops.length];
+        this.handshakeCmds = handshakeCmds(builder, database);
+        this.maxPooledConns = builder.maxPooledConns;
+        this.exclusive = builder.exclusive;
+        this.eventLoopAffinity = builder.eventLoopAffinity;
+        this.stripes = builder.keyAffinity ? new AtomicReferenceArray<Future<NedisClient>>(
+                builder.maxPooledConns) : null;
+        this.slowRequestThresholdNs = TimeUnit.MILLISECONDS
+                .toNanos(builder.slowRequestThresholdMs);
+        this.maxConns = builder.maxConns;
+        this.minIdle = builder.minIdle;
+        this.acquireTimeoutNs = TimeUnit.MILLISECONDS.toNanos(builder.acquireTimeoutMs);
+        this.closePromise = group.next().newPromise();
+        this.connectBackoffBaseNs = TimeUnit.MILLISECONDS.toNanos(builder.connectBackoffBaseMs);
+        this.connectBackoffMaxNs = TimeUnit.MILLISECONDS.toNanos(builder.connectBackoffMaxMs);
+        this.maxIdleTimeNs = TimeUnit.MILLISECONDS.toNanos(builder.maxIdleTimeMs);
+        this.pingTimeoutMs = builder.timeoutMs > 0 ? builder.timeoutMs : DEFAULT_PING_TIMEOUT_MS;
+        this.blockingPool = builder.maxBlockingConns > 0 ? new NedisClientPoolImpl(
+                builder.blockingPoolBuilder(), database, sibling != null ? sibling.blockingPool
+                        : null) : null;
+        // Everything below publishes this pool to other threads, so all the fields used by the
+        // scheduled tasks and the connect listeners must be assigned before.
+        this.healthCheckFuture = builder.healthCheckIntervalMs > 0 ? group.next()
+                .scheduleAtFixedRate(new HealthCheckTask(), builder.healthCheckIntervalMs,
+                        builder.healthCheckIntervalMs, TimeUnit.MILLISECONDS) : null;
+        if (builder.autoScaleIntervalMs > 0) {
+            autoScaler = new AutoScaler(builder.scaleUpDepth, builder.scaleDownDepth);
+            autoScaler.future = group.next().scheduleAtFixedRate(autoScaler,
+                    builder.autoScaleIntervalMs, builder.autoScaleIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            autoScaler = null;
+        }
+        this.warmUpFuture = warmUp(builder.preloadScripts);
+    }
 
-        });
+    private static NedisClientPoolBuilder legacyBuilder(Bootstrap bootstrap, long timeoutMs,
+            byte[] password, int database, byte[] clientName, int maxPooledConns,
+            boolean exclusive) {
         if (timeoutMs > 0) {
-            this.bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
+            bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
                     (int) Math.min(Integer.MAX_VALUE, timeoutMs));
         }
-        this.password = password;
-        this.database = database;
-        this.clientName = clientName;
-        this.maxPooledConns = maxPooledConns;
-        this.exclusive = exclusive;
-        this.pool = new NedisClientHashSet(maxPooledConns);
-        this.closePromise = bootstrap.group().next().newPromise();
+        NedisClientPoolBuilder builder = NedisClientPoolBuilder.builder()
+                .group(bootstrap.group()).timeoutMs(timeoutMs).database(database)
+                .maxPooledConns(maxPooledConns).exclusive(exclusive).eventLoopAffinity(false);
+        builder.password = password;
+        builder.clientName = clientName;
+        return builder;
     }
 
-    private final class InitializeFutureListener implements FutureListener<Void> {
+    private static Bootstrap newBootstrapTemplate(Bootstrap base, NedisClientPoolBuilder builder,
+            final long timeoutMs, final MemoryBudget memoryBudget) {
+        final int maxInFlight = builder.maxInFlight;
+        final BackPressurePolicy backPressurePolicy = builder.backPressurePolicy;
+        final int maxOverflow = builder.maxOverflow;
+        final long parkTimeoutNs = TimeUnit.MILLISECONDS.toNanos(builder.parkTimeoutMs);
+        // shared connections always need a limiter to count the outstanding requests for load
+        // balancing.
+        final boolean needLimiter = maxInFlight > 0 || !builder.exclusive;
+        final long flushLatencySloNs = TimeUnit.MICROSECONDS.toNanos(builder.flushLatencySloUs);
+        final int maxFlushBatch = builder.maxFlushBatch;
+        return base.handler(new ChannelInitializer<Channel>() {
 
-        private final Promise<NedisClient> promise;
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                InFlightLimiter limiter = needLimiter ? new InFlightLimiter(maxInFlight,
+                        backPressurePolicy, maxOverflow, parkTimeoutNs) : null;
+                FlushController flushController = flushLatencySloNs > 0 ? new FlushController(
+                        flushLatencySloNs, maxFlushBatch) : null;
+                ch.pipeline().addLast(new RedisRequestEncoder(),
+                        new RedisResponseDecoder(memoryBudget),
+                        new RedisDuplexHandler(TimeUnit.MILLISECONDS.toNanos(timeoutMs), limiter,
+                                memoryBudget, flushController));
+            }
 
-        private final NedisClientImpl client;
+        });
+    }
 
-        private final State nextState;
+    private static List<byte[][]> handshakeCmds(NedisClientPoolBuilder builder, int database) {
+        List<byte[][]> cmds = new ArrayList<>();
+        if (builder.hello) {
+            List<byte[]> hello = new ArrayList<>();
+            hello.add(HELLO.raw);
+            hello.add(toBytes(2));
+            if (builder.password != null) {
+                hello.add(RedisKeyword.AUTH.raw);
+                hello.add(DEFAULT_USER);
+                hello.add(builder.password);
+            }
+            if (builder.clientName != null) {
+                hello.add(SETNAME.raw);
+                hello.add(builder.clientName);
+            }
+            cmds.add(hello.toArray(new byte[0][]));
+        } else if (builder.password != null) {
+            cmds.add(new byte[][] {
+                AUTH.raw, builder.password
+            });
+        }
+        if (database != 0) {
+            cmds.add(new byte[][] {
+                SELECT.raw, toBytes(database)
+            });
+        }
+        if (!builder.hello && builder.clientName != null) {
+            cmds.add(new byte[][] {
+                CLIENT.raw, SETNAME.raw, builder.clientName
+            });
+        }
+        return cmds;
+    }
 
-        public InitializeFutureListener(Promise<NedisClient> promise, NedisClientImpl client,
-                State nextState) {
-            this.promise = promise;
-            this.client = client;
-            this.nextState = nextState;
+    private void initialize(final Promise<NedisClient> promise, final NedisClientImpl client) {
+        if (handshakeCmds.isEmpty()) {
+            promise.trySuccess(client);
+            return;
         }
+        client.handshake(handshakeCmds).addListener(new FutureListener<Void>() {
 
-        @Override
-        public void operationComplete(Future<Void> future) throws Exception {
-            if (future.isSuccess()) {
-                initialize(promise, client, nextState);
-            } else {
-                promise.tryFailure(future.cause());
-                client.close();
+            @Override
+            public void operationComplete(Future<Void> future) throws Exception {
+                if (future.isSuccess()) {
+                    promise.trySuccess(client);
+                } else {
+                    promise.tryFailure(future.cause());
+                    client.close();
+                }
+            }
+        });
+    }
+
+    // return -1 if the current thread is not an event loop of our group.
+    private int currentLoopIndex() {
+        for (int i = 0; i < loops.length; i++) {
+            if (loops[i].inEventLoop()) {
+                return i;
             }
         }
+        return -1;
+    }
 
+    private int loopIndex(NedisClient client) {
+        EventLoop loop = client.eventLoop();
+        for (int i = 0; i < loops.length; i++) {
+            if (loops[i] == loop) {
+                return i;
+            }
+        }
+        // should not happen
+        return 0;
     }
 
-    private enum State {
-        AUTH, SELECT, CLIENT_SETNAME, FINISH
+    private Future<NedisClient> newClient(int loopIndex) {
+        return newClient(loopIndex, !exclusive);
     }
 
-    private void initialize(final Promise<NedisClient> promise, final NedisClientImpl client,
-            State state) {
-        switch (state) {
-            case AUTH:
-                if (password == null) {
-                    initialize(promise, client, State.SELECT);
-                } else {
-                    client.auth0(password).addListener(
-                            new InitializeFutureListener(promise, client, State.SELECT));
-                }
-                break;
-            case SELECT:
-                if (database == 0) {
-                    initialize(promise, client, State.CLIENT_SETNAME);
-                } else {
-                    client.select0(database).addListener(
-                            new InitializeFutureListener(promise, client, State.CLIENT_SETNAME));
+    // Create a new client, the caller should have already counted it in numConns. Fail fast when
+    // backing off after connect failures, and when the backoff is over, only one attempt is made
+    // and others wait for its result.
+    private Future<NedisClient> newClient(final int loopIndex, final boolean pooling) {
+        for (;;) {
+            if (connectFailures.get() == 0) {
+                return connect(loopIndex, pooling);
+            }
+            Future<NedisClient> probe = probeConnect.get();
+            if (probe != null) {
+                return connectAfter(probe, loopIndex, pooling);
+            }
+            long retryInNs = retryNanoTime - System.nanoTime();
+            if (retryInNs > 0) {
+                connClosed();
+                return group.next().<NedisClient>newPromise().setFailure(
+                        new ConnectBackoffException(TimeUnit.NANOSECONDS.toMillis(retryInNs),
+                                lastConnectFailure));
+            }
+            final Promise<NedisClient> promise = group.next().newPromise();
+            if (!probeConnect.compareAndSet(null, promise)) {
+                continue;
+            }
+            connect(loopIndex, pooling).addListener(new FutureListener<NedisClient>() {
+
+                @Override
+                public void operationComplete(Future<NedisClient> future) throws Exception {
+                    probeConnect.set(null);
+                    if (future.isSuccess()) {
+                        promise.trySuccess(future.getNow());
+                        // the endpoint is back, create the connections which are skipped during
+                        // the backoff.
+                        connectForWaiters();
+                        ensureMinIdle();
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
                 }
-                break;
-            case CLIENT_SETNAME:
-                if (clientName == null) {
-                    promise.trySuccess(client);
-                } else {
-                    client.clientSetname0(clientName).addListener(
-                            new InitializeFutureListener(promise, client, State.FINISH));
+            });
+            return promise;
+        }
+    }
+
+    private Future<NedisClient> connectAfter(Future<NedisClient> probe, final int loopIndex,
+            final boolean pooling) {
+        final Promise<NedisClient> promise = group.next().newPromise();
+        probe.addListener(new FutureListener<NedisClient>() {
+
+            @Override
+            public void operationComplete(Future<NedisClient> future) throws Exception {
+                if (!future.isSuccess()) {
+                    connClosed();
+                    promise.tryFailure(future.cause());
+                    return;
                 }
-            case FINISH:
-                promise.trySuccess(client);
-                break;
+                connect(loopIndex, pooling).addListener(new FutureListener<NedisClient>() {
+
+                    @Override
+                    public void operationComplete(Future<NedisClient> future) throws Exception {
+                        if (future.isSuccess()) {
+                            promise.trySuccess(future.getNow());
+                        } else {
+                            promise.tryFailure(future.cause());
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    // return true if we should not create connections in background.
+    private boolean inBackoff() {
+        return connectFailures.get() > 0;
+    }
+
+    // generation is the value of connectFailures when the connect was started. Only the first
+    // failure of the connects started in the same generation advances the backoff, so a burst of
+    // concurrent connects which fail together counts as one failure.
+    private void connectFailed(Throwable cause, int generation) {
+        if (connectBackoffBaseNs <= 0) {
+            return;
         }
+        int failures = generation + 1;
+        if (!connectFailures.compareAndSet(generation, failures)) {
+            return;
+        }
+        lastConnectFailure = cause;
+        long backoffNs = Math.min(connectBackoffMaxNs,
+                connectBackoffBaseNs << Math.min(failures - 1, 20));
+        // equal jitter, so the clients which fail together will not retry together.
+        backoffNs = backoffNs / 2 + ThreadLocalRandom.current().nextLong(backoffNs / 2 + 1);
+        retryNanoTime = System.nanoTime() + backoffNs;
     }
 
-    private Future<NedisClient> newClient() {
-        ChannelFuture f = bootstrap.connect();
-        final Promise<NedisClient> promise = f.channel().eventLoop().newPromise();
+    // loopIndex -1 means let the bootstrap choose an event loop. If pooling is true, the new client
+    // will be added to the shared connections.
+    private Future<NedisClient> connect(int loopIndex, boolean pooling) {
+        ChannelFuture f = loopIndex < 0 ? bootstrap.connect() : loopBootstraps[loopIndex].connect();
+        final Promise<NedisClient> initPromise = f.channel().eventLoop().newPromise();
         f.addListener(new ChannelFutureListener() {
 
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
                 if (future.isSuccess()) {
-                    initialize(promise, new NedisClientImpl(future.channel(),
-                            NedisClientPoolImpl.this), State.AUTH);
+                    initialize(initPromise, new NedisClientImpl(future.channel(),
+                            NedisClientPoolImpl.this));
                 } else {
-                    promise.tryFailure(future.cause());
+                    initPromise.tryFailure(future.cause());
                 }
             }
         });
+        Promise<NedisClient> promise = f.channel().eventLoop().newPromise();
+        initPromise.addListener(new ConnectFutureListener(promise, pooling,
+                connectFailures.get()));
         return promise;
     }
 
-    private final class AcquireFutureListener implements FutureListener<NedisClient> {
+    // Add the new connection to the pool before notifying the caller, so the caller will always see
+    // it in the pool.
+    private final class ConnectFutureListener implements FutureListener<NedisClient> {
 
-        private final boolean exclusive;
+        private final Promise<NedisClient> promise;
 
-        public AcquireFutureListener(boolean exclusive) {
-            this.exclusive = exclusive;
+        private final boolean pooling;
+
+        private final int generation;
+
+        public ConnectFutureListener(Promise<NedisClient> promise, boolean pooling,
+                int generation) {
+            this.promise = promise;
+            this.pooling = pooling;
+            this.generation = generation;
         }
 
         @Override
         public void operationComplete(Future<NedisClient> future) throws Exception {
-            synchronized (pool) {
-                if (future.isSuccess()) {
-                    final NedisClient client = future.getNow();
-                    client.closeFuture().addListener(new FutureListener<Void>() {
+            if (!future.isSuccess()) {
+                // record the failure first so connClosed will not retry for the waiters.
+                connectFailed(future.cause(), generation);
+                connClosed();
+                promise.tryFailure(future.cause());
+                return;
+            }
+            connectFailures.set(0);
+            final NedisClientImpl client = (NedisClientImpl) future.getNow();
+            client.closeFuture().addListener(new FutureListener<Void>() {
 
-                        @Override
-                        public void operationComplete(Future<Void> future) throws Exception {
-                            synchronized (pool) {
-                                pool.remove(client);
-                                numConns--;
-                                if (closed && numConns == 0) {
-                                    closePromise.trySuccess(null);
-                                }
-                            }
+                @Override
+                public void operationComplete(Future<Void> future) throws Exception {
+                    removeFromPool(client);
+                    connClosed();
+                    ensureMinIdle();
+                }
+
+            });
+            if (pooling) {
+                tryPooling(client);
+            } else if (closed) {
+                client.close();
+            }
+            promise.trySuccess(client);
+        }
+    }
+
+    private void tryCompleteClose() {
+        if (numConns.get() == 0 && (blockingPool == null || blockingPool.closeFuture().isDone())) {
+            closePromise.trySuccess(null);
+        }
+    }
+
+    private void connClosed() {
+        if (numConns.decrementAndGet() == 0 && closed) {
+            tryCompleteClose();
+        }
+        // a slot is released, try creating a new connection for the waiters.
+        connectForWaiters();
+    }
+
+    private boolean tryReserveConn() {
+        if (maxConns <= 0) {
+            numConns.incrementAndGet();
+            return true;
+        }
+        return tryReserve(numConns, maxConns);
+    }
+
+    private final class Waiter implements Runnable {
+
+        private final Promise<NedisClient> promise;
+
+        private final long startNanoTime = System.nanoTime();
+
+        private volatile ScheduledFuture<?> timeoutFuture;
+
+        public Waiter(Promise<NedisClient> promise) {
+            this.promise = promise;
+        }
+
+        // timeout
+        @Override
+        public void run() {
+            if (waiters.remove(this)) {
+                numWaiters.decrementAndGet();
+                recordWait(startNanoTime);
+                promise.tryFailure(AcquireTimeoutException.INSTANCE);
+            }
+        }
+
+        public boolean serve(NedisClient client) {
+            ScheduledFuture<?> f = timeoutFuture;
+            if (f != null) {
+                f.cancel(false);
+            }
+            recordWait(startNanoTime);
+            return promise.trySuccess(client);
+        }
+    }
+
+    private void recordWait(long startNanoTime) {
+        long waitNs = System.nanoTime() - startNanoTime;
+        numAcquireWaits.incrementAndGet();
+        totalAcquireWaitNs.addAndGet(waitNs);
+        for (;;) {
+            long max = maxAcquireWaitNs.get();
+            if (waitNs <= max || maxAcquireWaitNs.compareAndSet(max, waitNs)) {
+                return;
+            }
+        }
+    }
+
+    private Waiter pollWaiter() {
+        Waiter waiter = waiters.poll();
+        if (waiter != null) {
+            numWaiters.decrementAndGet();
+        }
+        return waiter;
+    }
+
+    // hand the client to the first waiter which is not cancelled, return false if there is none.
+    private boolean serveWaiter(NedisClient client) {
+        for (Waiter waiter; (waiter = pollWaiter()) != null;) {
+            if (waiter.serve(client)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void failWaiter(Throwable cause) {
+        Waiter waiter = pollWaiter();
+        if (waiter != null) {
+            waiter.promise.tryFailure(cause);
+        }
+    }
+
+    private Future<NedisClient> waitForConn() {
+        EventExecutor executor = group.next();
+        Waiter waiter = new Waiter(executor.<NedisClient>newPromise());
+        waiters.add(waiter);
+        numWaiters.incrementAndGet();
+        if (acquireTimeoutNs > 0) {
+            waiter.timeoutFuture = executor.schedule(waiter, acquireTimeoutNs,
+                    TimeUnit.NANOSECONDS);
+        }
+        // A connection may be released or a slot may be freed before we are added to the queue,
+        // so check again.
+        for (NedisClient client; numWaiters.get() > 0 && (client = pick(-1, false)) != null;) {
+            if (!serveWaiter(client)) {
+                if (exclusive) {
+                    tryPooling((NedisClientImpl) client);
+                }
+                break;
+            }
+        }
+        connectForWaiters();
+        if (closed) {
+            failWaiters();
+        }
+        return waiter.promise;
+    }
+
+    private void connectForWaiters() {
+        while (numWaiters.get() > numWaiterConnects.get() && !closed && !inBackoff()
+                && tryReserveConn()) {
+            numWaiterConnects.incrementAndGet();
+            newClient(-1).addListener(new FutureListener<NedisClient>() {
+
+                @Override
+                public void operationComplete(Future<NedisClient> future) throws Exception {
+                    numWaiterConnects.decrementAndGet();
+                    if (future.isSuccess()) {
+                        // the shared connections have already been handed to the waiters when
+                        // pooling.
+                        if (exclusive) {
+                            release(future.getNow());
                         }
+                    } else {
+                        failWaiter(future.cause());
+                    }
+                }
+            });
+        }
+    }
 
-                    });
-                    if (!exclusive) {
-                        tryPooling(future.getNow());
+    private void failWaiters() {
+        for (Waiter waiter; (waiter = pollWaiter()) != null;) {
+            waiter.promise.tryFailure(new IllegalStateException("already closed"));
+        }
+    }
+
+    // the connections of stripes are created on demand, so minIdle is ignored in key affinity
+    // mode.
+    private void ensureMinIdle() {
+        ensureMinIdle(null);
+    }
+
+    // the futures of the new connections will be added to connects if it is not null.
+    private void ensureMinIdle(List<Future<NedisClient>> connects) {
+        while (!closed && stripes == null && !inBackoff()
+                && numPooledConns() + numIdleConnects.get() < minIdle && tryReserveConn()) {
+            numIdleConnects.incrementAndGet();
+            Future<NedisClient> f = newClient(-1);
+            if (connects != null) {
+                connects.add(f);
+            }
+            f.addListener(new FutureListener<NedisClient>() {
+
+                @Override
+                public void operationComplete(Future<NedisClient> future) throws Exception {
+                    numIdleConnects.decrementAndGet();
+                    if (future.isSuccess() && exclusive) {
+                        release(future.getNow());
                     }
-                } else {
-                    numConns--;
                 }
+            });
+        }
+    }
+
+    // Open the minIdle connections in parallel, and then load the scripts through one of them.
+    private Future<Void> warmUp(final List<byte[]> scripts) {
+        final Promise<Void> promise = group.next().newPromise();
+        List<Future<NedisClient>> connects = new ArrayList<>();
+        ensureMinIdle(connects);
+        final AtomicInteger remaining = new AtomicInteger(connects.size() + 1);
+        FutureListener<NedisClient> listener = new FutureListener<NedisClient>() {
+
+            @Override
+            public void operationComplete(Future<NedisClient> future) throws Exception {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    preloadScripts(scripts, promise);
+                }
+            }
+        };
+        for (Future<NedisClient> f: connects) {
+            f.addListener(listener);
+        }
+        if (remaining.decrementAndGet() == 0) {
+            preloadScripts(scripts, promise);
+        }
+        return promise;
+    }
+
+    private void preloadScripts(final List<byte[]> scripts, final Promise<Void> promise) {
+        if (scripts.isEmpty()) {
+            promise.trySuccess(null);
+            return;
+        }
+        acquire().addListener(new FutureListener<NedisClient>() {
+
+            @Override
+            public void operationComplete(Future<NedisClient> future) throws Exception {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                final NedisClient client = future.getNow();
+                final AtomicInteger remaining = new AtomicInteger(scripts.size());
+                FutureListener<byte[]> listener = new FutureListener<byte[]>() {
+
+                    @Override
+                    public void operationComplete(Future<byte[]> future) throws Exception {
+                        if (!future.isSuccess()) {
+                            promise.tryFailure(future.cause());
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            client.release();
+                            promise.trySuccess(null);
+                        }
+                    }
+                };
+                // the script cache is shared by all connections, so loading once is enough.
+                for (byte[] script: scripts) {
+                    client.scriptLoad(script).addListener(listener);
+                }
+            }
+        });
+    }
+
+    // reserve a slot in the counter if it has not reached the limit.
+    private static boolean tryReserve(AtomicInteger counter, int limit) {
+        for (;;) {
+            int n = counter.get();
+            if (n >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private NedisClient pollIdle(int loopIndex) {
+        for (NedisClientImpl client; (client = idleConns[loopIndex].poll()) != null;) {
+            numIdleConns.decrementAndGet();
+            client.markUnpooled();
+            if (client.isOpen()) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    // A connection stuck behind a slow command is only chosen when the other one is also stuck.
+    private long load(NedisClientImpl client, int numOutstanding, long now) {
+        long oldestNanoTime = client.oldestNanoTime();
+        if (oldestNanoTime != RedisDuplexHandler.NO_IN_FLIGHT
+                && now - oldestNanoTime >= slowRequestThresholdNs) {
+            return numOutstanding + STUCK_PENALTY;
+        }
+        return numOutstanding;
+    }
+
+    // power of two choices, see "The Power of Two Choices in Randomized Load Balancing".
+    private NedisClient lessLoaded(NedisClient a, NedisClient b) {
+        NedisClientImpl clientA = (NedisClientImpl) a;
+        NedisClientImpl clientB = (NedisClientImpl) b;
+        int numOutstandingA = clientA.numOutstanding();
+        if (numOutstandingA == 0) {
+            return a;
+        }
+        int numOutstandingB = clientB.numOutstanding();
+        if (numOutstandingB == 0) {
+            return b;
+        }
+        long now = System.nanoTime();
+        return load(clientA, numOutstandingA, now) <= load(clientB, numOutstandingB, now) ? a : b;
+    }
+
+    private NedisClient pickShared(int loopIndex) {
+        NedisClient[] conns = sharedConns[loopIndex].get();
+        switch (conns.length) {
+            case 0:
+                return null;
+            case 1:
+                return conns[0];
+            case 2:
+                return lessLoaded(conns[0], conns[1]);
+            default:
+                ThreadLocalRandom rand = ThreadLocalRandom.current();
+                int i = rand.nextInt(conns.length);
+                int j = rand.nextInt(conns.length - 1);
+                return lessLoaded(conns[i], conns[j >= i ? j + 1 : j]);
+        }
+    }
+
+    // a random shared connection of a random event loop.
+    private NedisClient randomShared(ThreadLocalRandom rand) {
+        int start = rand.nextInt(loops.length);
+        for (int i = 0; i < loops.length; i++) {
+            NedisClient[] conns = sharedConns[(start + i) % loops.length].get();
+            if (conns.length > 0) {
+                return conns[rand.nextInt(conns.length)];
+            }
+        }
+        return null;
+    }
+
+    private NedisClient pick(int loopIndex) {
+        return exclusive ? pollIdle(loopIndex) : pickShared(loopIndex);
+    }
+
+    // try the event loop of the caller first, and then all event loops start from a random one.
+    private NedisClient pick(int loopIndex, boolean preferredOnly) {
+        if (loopIndex >= 0) {
+            NedisClient client = pick(loopIndex);
+            if (client != null || preferredOnly) {
+                return client;
+            }
+        }
+        if (!exclusive) {
+            if (loops.length == 1) {
+                return pickShared(0);
+            }
+            ThreadLocalRandom rand = ThreadLocalRandom.current();
+            NedisClient a = randomShared(rand);
+            if (a == null) {
+                return null;
+            }
+            NedisClient b = randomShared(rand);
+            return a == b ? a : lessLoaded(a, b);
+        }
+        if (numIdleConns.get() == 0) {
+            return null;
+        }
+        int start = ThreadLocalRandom.current().nextInt(loops.length);
+        for (int i = 0; i < loops.length; i++) {
+            NedisClient client = pollIdle((start + i) % loops.length);
+            if (client != null) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    private static Future<NedisClient> succeededFuture(NedisClient client) {
+        return client.eventLoop().newSucceededFuture(client);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Future<NedisClient> acquireLoopConn(final int loopIndex) {
+        Future<NedisClient> pending = (Future<NedisClient>) pendingLoopConns[loopIndex];
+        if (pending != null) {
+            return pending;
+        }
+        if (!tryReserveConn()) {
+            NedisClient client = pick(loopIndex, false);
+            return client != null ? succeededFuture(client) : waitForConn();
+        }
+        Future<NedisClient> f = newClient(loopIndex);
+        if (!f.isDone()) {
+            pendingLoopConns[loopIndex] = f;
+            f.addListener(new FutureListener<NedisClient>() {
+
+                @Override
+                public void operationComplete(Future<NedisClient> future) throws Exception {
+                    pendingLoopConns[loopIndex] = null;
+                }
+            });
+        }
+        return f;
+    }
+
+    private static boolean isUsable(Future<NedisClient> f) {
+        return !f.isDone() || (f.isSuccess() && f.getNow().isOpen());
+    }
+
+    private Future<NedisClient> acquireStripe(int index) {
+        for (;;) {
+            Future<NedisClient> f = stripes.get(index);
+            if (f != null && isUsable(f)) {
+                return f;
+            }
+            // install the promise first so only one connection is created for a stripe.
+            int loopIndex = index % loops.length;
+            final Promise<NedisClient> promise = loops[loopIndex].newPromise();
+            if (!stripes.compareAndSet(index, f, promise)) {
+                continue;
             }
+            numConns.incrementAndGet();
+            newClient(loopIndex, false).addListener(new FutureListener<NedisClient>() {
+
+                @Override
+                public void operationComplete(Future<NedisClient> future) throws Exception {
+                    if (future.isSuccess()) {
+                        promise.trySuccess(future.getNow());
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
+                }
+            });
+            return promise;
+        }
+    }
+
+    private int stripeIndex(byte[] key) {
+        int h = Arrays.hashCode(key);
+        // spread the bits as the hash code of byte array is weak in the low bits.
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return (h & Integer.MAX_VALUE) % stripes.length();
+    }
+
+    private Future<NedisClient> closedFuture() {
+        return group.next().<NedisClient>newPromise()
+                .setFailure(new IllegalStateException("already closed"));
+    }
+
+    @Override
+    public Future<NedisClient> acquire(byte[] key) {
+        if (stripes == null) {
+            return acquire();
+        }
+        if (closed) {
+            return closedFuture();
         }
+        return acquireStripe(stripeIndex(key));
     }
 
     @Override
     public Future<NedisClient> acquire() {
-        synchronized (pool) {
-            if (closed) {
-                return bootstrap.group().next().<NedisClient>newPromise()
-                        .setFailure(new IllegalStateException("already closed"));
+        if (closed) {
+            return closedFuture();
+        }
+        if (stripes != null) {
+            return acquireStripe(ThreadLocalRandom.current().nextInt(stripes.length()));
+        }
+        int loopIndex = eventLoopAffinity ? currentLoopIndex() : -1;
+        if (exclusive) {
+            NedisClient client = pick(loopIndex, false);
+            if (client != null) {
+                if (minIdle > 0) {
+                    ensureMinIdle();
+                }
+                return succeededFuture(client);
             }
-            if (numConns < maxPooledConns) {
-                numConns++;
-                return newClient().addListener(new AcquireFutureListener(exclusive));
+            return tryReserveConn() ? newClient(loopIndex) : waitForConn();
+        }
+        if (loopIndex >= 0) {
+            // make sure that there is at least one connection for each event loop.
+            NedisClient client = pick(loopIndex, true);
+            return client != null ? succeededFuture(client) : acquireLoopConn(loopIndex);
+        }
+        // the auto scaler decides when to add connections.
+        if (autoScaler == null
+                && tryReserve(numConns, maxConns > 0 ? Math.min(maxConns, maxPooledConns)
+                        : maxPooledConns)) {
+            return newClient(loopIndex);
+        }
+        NedisClient client = pick(loopIndex, false);
+        if (client != null) {
+            return succeededFuture(client);
+        }
+        return tryReserveConn() ? newClient(loopIndex) : waitForConn();
+    }
+
+    @Override
+    public Future<NedisClient> acquireBlocking() {
+        return blockingPool != null ? blockingPool.acquire() : acquire();
+    }
+
+    // return false if the client is already in the array.
+    private static boolean addConn(AtomicReference<NedisClient[]> ref, NedisClient client) {
+        for (;;) {
+            NedisClient[] conns = ref.get();
+            for (NedisClient c: conns) {
+                if (c == client) {
+                    return false;
+                }
+            }
+            NedisClient[] newConns = Arrays.copyOf(conns, conns.length + 1);
+            newConns[conns.length] = client;
+            if (ref.compareAndSet(conns, newConns)) {
+                return true;
+            }
+        }
+    }
+
+    // return false if the client is not in the array.
+    private static boolean removeConn(AtomicReference<NedisClient[]> ref, NedisClient client) {
+        for (;;) {
+            NedisClient[] conns = ref.get();
+            int index = -1;
+            for (int i = 0; i < conns.length; i++) {
+                if (conns[i] == client) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            NedisClient[] newConns;
+            if (conns.length == 1) {
+                newConns = EMPTY_CONNS;
+            } else {
+                newConns = new NedisClient[conns.length - 1];
+                System.arraycopy(conns, 0, newConns, 0, index);
+                System.arraycopy(conns, index + 1, newConns, index, conns.length - index - 1);
+            }
+            if (ref.compareAndSet(conns, newConns)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean addShared(NedisClient client) {
+        AtomicReference<NedisClient[]> ref = sharedConns[loopIndex(client)];
+        if (!tryReserve(numSharedConns, maxPooledConns)) {
+            // the only connection of an event loop is always kept.
+            if (!eventLoopAffinity || ref.get().length > 0) {
+                return false;
             }
-            if (!pool.isEmpty()) {
-                NedisClient client = pool.head(exclusive);
-                Promise<NedisClient> promise = client.eventLoop().newPromise();
-                promise.setSuccess(client);
-                return promise;
+            numSharedConns.incrementAndGet();
+        }
+        if (!addConn(ref, client)) {
+            numSharedConns.decrementAndGet();
+        }
+        return true;
+    }
+
+    private boolean addIdle(NedisClientImpl client) {
+        if (!tryReserve(numIdleConns, maxPooledConns)) {
+            return false;
+        }
+        if (!client.tryMarkPooled()) {
+            // already in the pool
+            numIdleConns.decrementAndGet();
+            return true;
+        }
+        idleConns[loopIndex(client)].add(client);
+        return true;
+    }
+
+    private void removeFromPool(NedisClientImpl client) {
+        if (exclusive) {
+            if (idleConns[loopIndex(client)].remove(client)) {
+                numIdleConns.decrementAndGet();
+                client.markUnpooled();
+            }
+        } else {
+            if (removeConn(sharedConns[loopIndex(client)], client)) {
+                numSharedConns.decrementAndGet();
             }
-            numConns++;
-            return newClient().addListener(new AcquireFutureListener(exclusive));
         }
     }
 
-    private void tryPooling(NedisClient client) {
+    private void tryPooling(NedisClientImpl client) {
         if (closed) {
             client.close();
             return;
         }
-        if (pool.contains(client)) {
+        if (!(exclusive ? addIdle(client) : addShared(client))) {
+            client.close();
             return;
         }
-        if (pool.size() < maxPooledConns) {
-            pool.add(client);
-        } else {
+        // close() may have already drained the pool, or the close listener may have already
+        // been called.
+        if (closed || !client.isOpen()) {
+            removeFromPool(client);
             client.close();
+            return;
+        }
+        if (!exclusive) {
+            // a shared connection can serve all the waiters.
+            while (numWaiters.get() > 0 && serveWaiter(client));
+        }
+    }
+
+    private void returnIdle(NedisClientImpl client) {
+        if (exclusive && serveWaiter(client)) {
+            return;
         }
+        tryPooling(client);
     }
 
     @Override
     public void release(NedisClient client) {
-        synchronized (pool) {
-            if (client.isOpen()) {
-                tryPooling(client);
+        // the connections of stripes are never returned to the pool.
+        if (stripes == null && client.isOpen()) {
+            NedisClientImpl impl = (NedisClientImpl) client;
+            impl.markReleased();
+            returnIdle(impl);
+        }
+    }
+
+    @Override
+    public <T> Future<T> withConnection(final ConnectionCallback<T> callback) {
+        // notified in the event loop of the pinned client.
+        final Promise<T> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        acquire().addListener(new FutureListener<NedisClient>() {
+
+            @Override
+            public void operationComplete(Future<NedisClient> future) throws Exception {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                final NedisClientImpl client = (NedisClientImpl) future.getNow();
+                if (client.eventLoop().inEventLoop()) {
+                    callPinned(client, callback, promise);
+                } else {
+                    client.eventLoop().execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            callPinned(client, callback, promise);
+                        }
+                    });
+                }
             }
+        });
+        return promise;
+    }
+
+    // Must be called in the event loop of the client, so no other commands can be written to the
+    // channel before the flush.
+    private <T> void callPinned(final NedisClientImpl client, ConnectionCallback<T> callback,
+            final Promise<T> promise) {
+        Future<T> result;
+        try {
+            result = callback.call(client.withoutFlush());
+        } catch (Throwable t) {
+            client.flush();
+            client.release();
+            promise.tryFailure(t);
+            return;
         }
+        client.flush();
+        result.addListener(new FutureListener<T>() {
+
+            @Override
+            public void operationComplete(Future<T> future) throws Exception {
+                client.release();
+                if (future.isSuccess()) {
+                    promise.trySuccess(future.getNow());
+                } else {
+                    promise.tryFailure(future.cause());
+                }
+            }
+        });
     }
 
     @Override
-    public Future<Void> close() {
-        NedisClient[] toClose;
-        synchronized (pool) {
+    public Future<List<Object>> transaction(final TransactionCallback callback) {
+        return withConnection(new ConnectionCallback<List<Object>>() {
+
+            @Override
+            public Future<List<Object>> call(NedisClient client) {
+                client.multi();
+                try {
+                    callback.execute(client);
+                } catch (RuntimeException | Error e) {
+                    client.discard();
+                    throw e;
+                }
+                return client.exec();
+            }
+        });
+    }
+
+    // Only a timeout or an I/O failure means the connection is broken. A PING rejected by back
+    // pressure or load shedding is never sent, and an error reply is still a reply.
+    private static boolean isConnectionFailure(Throwable cause) {
+        if (cause instanceof BackPressureException || cause instanceof RedisResponseException) {
+            return false;
+        }
+        return cause instanceof TimeoutException || cause instanceof IOException;
+    }
+
+    // Close the client if it does not respond to PING, the close listener will replace it if
+    // needed. An exclusive client is taken out of the idle queue during the check so no one can
+    // start a transaction on it, and returned when the check passes or fails for other reasons.
+    private void ping(final NedisClientImpl client, final boolean release) {
+        client.withTimeout(pingTimeoutMs).ping().addListener(new FutureListener<String>() {
+
+            @Override
+            public void operationComplete(Future<String> future) throws Exception {
+                if (!future.isSuccess() && isConnectionFailure(future.cause())) {
+                    client.close();
+                } else if (release) {
+                    returnIdle(client);
+                }
+            }
+        });
+    }
+
+    private final class HealthCheckTask implements Runnable {
+
+        @Override
+        public void run() {
+            if (closed) {
+                return;
+            }
+            if (stripes != null) {
+                for (int i = 0; i < stripes.length(); i++) {
+                    Future<NedisClient> f = stripes.get(i);
+                    if (f != null && f.isSuccess()) {
+                        checkShared((NedisClientImpl) f.getNow());
+                    }
+                }
+            } else if (exclusive) {
+                checkIdle();
+            } else {
+                for (int i = 0; i < loops.length; i++) {
+                    for (NedisClient client: sharedConns[i].get()) {
+                        checkShared((NedisClientImpl) client);
+                    }
+                }
+            }
+        }
+
+        // a busy shared client does not need a PING, the requests will find out if it is dead.
+        private void checkShared(NedisClientImpl client) {
+            if (client.isOpen() && client.numOutstanding() == 0) {
+                ping(client, false);
+            }
+        }
+
+        private void checkIdle() {
+            long now = System.nanoTime();
+            for (int i = 0; i < loops.length; i++) {
+                // only check the clients which are already in the queue.
+                for (int n = idleConns[i].size(); n > 0; n--) {
+                    NedisClientImpl client = (NedisClientImpl) pollIdle(i);
+                    if (client == null) {
+                        break;
+                    }
+                    if (maxIdleTimeNs > 0 && now - client.releaseNanoTime() >= maxIdleTimeNs
+                            && numIdleConns.get() >= minIdle) {
+                        client.close();
+                    } else {
+                        ping(client, true);
+                    }
+                }
+            }
+        }
+    }
+
+    // Resize the shared connections by the average number of outstanding requests per connection
+    // and the age of the oldest request. The age only counts when other requests are queued behind
+    // the oldest one, otherwise a lone blocking command such as BLPOP would look like a stuck
+    // connection while nothing is waiting for it. A decision is only made after it is observed for several
+    // consecutive samples, and the samples are reset after each change, so the pool will not flap.
+    private final class AutoScaler implements Runnable {
+
+        private static final int SCALE_UP_SAMPLES = 3;
+
+        private static final int SCALE_DOWN_SAMPLES = 10;
+
+        private final int scaleUpDepth;
+
+        private final int scaleDownDepth;
+
+        private final int minConns;
+
+        private final int maxConns;
+
+        private int scaleUpCount;
+
+        private int scaleDownCount;
+
+        private ScheduledFuture<?> future;
+
+        public AutoScaler(int scaleUpDepth, int scaleDownDepth) {
+            this.scaleUpDepth = scaleUpDepth;
+            this.scaleDownDepth = scaleDownDepth;
+            this.minConns = Math.max(minIdle, 1);
+            this.maxConns = NedisClientPoolImpl.this.maxConns > 0 ? Math.min(
+                    NedisClientPoolImpl.this.maxConns, maxPooledConns) : maxPooledConns;
+        }
+
+        @Override
+        public void run() {
             if (closed) {
-                return closePromise;
+                return;
             }
-            closed = true;
-            toClose = pool.toArray();
+            long now = System.nanoTime();
+            int numConns = 0;
+            long numOutstanding = 0;
+            boolean stuck = false;
+            NedisClientImpl leastLoaded = null;
+            int busiestLoop = -1;
+            long busiestLoopOutstanding = -1;
+            for (int i = 0; i < loops.length; i++) {
+                NedisClient[] conns = sharedConns[i].get();
+                long loopOutstanding = 0;
+                for (NedisClient conn: conns) {
+                    NedisClientImpl client = (NedisClientImpl) conn;
+                    int n = client.numOutstanding();
+                    numConns++;
+                    numOutstanding += n;
+                    loopOutstanding += n;
+                    long oldestNanoTime = client.oldestNanoTime();
+                    if (n > 1 && oldestNanoTime != RedisDuplexHandler.NO_IN_FLIGHT
+                            && now - oldestNanoTime >= slowRequestThresholdNs) {
+                        stuck = true;
+                    }
+                    // keep the only connection of an event loop.
+                    if ((!eventLoopAffinity || conns.length > 1)
+                            && (leastLoaded == null || n < leastLoaded.numOutstanding())) {
+                        leastLoaded = client;
+                    }
+                }
+                if (conns.length > 0 && loopOutstanding > busiestLoopOutstanding) {
+                    busiestLoop = i;
+                    busiestLoopOutstanding = loopOutstanding;
+                }
+            }
+            if (numConns == 0) {
+                return;
+            }
+            if (stuck || numOutstanding > (long) scaleUpDepth * numConns) {
+                scaleDownCount = 0;
+                if (++scaleUpCount >= SCALE_UP_SAMPLES) {
+                    scaleUpCount = 0;
+                    scaleUp(numConns, busiestLoop);
+                }
+            } else if (numOutstanding < (long) scaleDownDepth * numConns) {
+                scaleUpCount = 0;
+                if (++scaleDownCount >= SCALE_DOWN_SAMPLES) {
+                    scaleDownCount = 0;
+                    scaleDown(numConns, leastLoaded);
+                }
+            } else {
+                scaleUpCount = 0;
+                scaleDownCount = 0;
+            }
+        }
+
+        // Add the connection to the busiest event loop, so it can be removed later without breaking
+        // the one connection per event loop guarantee.
+        private void scaleUp(int numSharedConns, int loopIndex) {
+            if (numSharedConns < maxConns && !inBackoff()
+                    && tryReserve(NedisClientPoolImpl.this.numConns, maxConns)) {
+                newClient(loopIndex);
+            }
+        }
+
+        private void scaleDown(int numSharedConns, NedisClientImpl client) {
+            if (numSharedConns <= minConns || client == null) {
+                return;
+            }
+            removeFromPool(client);
+            closeWhenDone(client);
         }
-        for (NedisClient client: toClose) {
+    }
+
+    // close the client after all its outstanding requests are done.
+    private void closeWhenDone(final NedisClientImpl client) {
+        if (client.numOutstanding() == 0) {
             client.close();
+            return;
+        }
+        client.eventLoop().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                closeWhenDone(client);
+            }
+        }, CLOSE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<Void> close() {
+        if (closed) {
+            return closePromise;
+        }
+        closed = true;
+        if (healthCheckFuture != null) {
+            healthCheckFuture.cancel(false);
+        }
+        if (autoScaler != null) {
+            autoScaler.future.cancel(false);
         }
+        failWaiters();
+        if (stripes != null) {
+            for (int i = 0; i < stripes.length(); i++) {
+                Future<NedisClient> f = stripes.get(i);
+                if (f != null && f.isSuccess()) {
+                    f.getNow().close();
+                }
+            }
+        }
+        for (int i = 0; i < loops.length; i++) {
+            for (NedisClient client: sharedConns[i].get()) {
+                removeFromPool((NedisClientImpl) client);
+                client.close();
+            }
+            for (NedisClient client; (client = pollIdle(i)) != null;) {
+                client.close();
+            }
+        }
+        if (blockingPool != null) {
+            blockingPool.close().addListener(new FutureListener<Void>() {
+
+                @Override
+                public void operationComplete(Future<Void> future) throws Exception {
+                    tryCompleteClose();
+                }
+            });
+        }
+        tryCompleteClose();
         return closePromise;
     }
 
@@ -253,16 +1491,47 @@ public class NedisClientPoolImpl implements NedisClientPool {
 
     @Override
     public int numConns() {
-        synchronized (pool) {
-            return numConns;
-        }
+        return numConns.get();
     }
 
     @Override
     public int numPooledConns() {
-        synchronized (pool) {
-            return pool.size();
+        if (stripes != null) {
+            int n = 0;
+            for (int i = 0; i < stripes.length(); i++) {
+                Future<NedisClient> f = stripes.get(i);
+                if (f != null && f.isSuccess() && f.getNow().isOpen()) {
+                    n++;
+                }
+            }
+            return n;
         }
+        return exclusive ? numIdleConns.get() : numSharedConns.get();
+    }
+
+    @Override
+    public Future<Void> warmUp() {
+        return warmUpFuture;
+    }
+
+    @Override
+    public int numWaiters() {
+        return numWaiters.get();
+    }
+
+    @Override
+    public long numAcquireWaits() {
+        return numAcquireWaits.get();
+    }
+
+    @Override
+    public long totalAcquireWaitNs() {
+        return totalAcquireWaitNs.get();
+    }
+
+    @Override
+    public long maxAcquireWaitNs() {
+        return maxAcquireWaitNs.get();
     }
 
     @Override
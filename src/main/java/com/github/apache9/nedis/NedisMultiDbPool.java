@@ -0,0 +1,25 @@
+package com.github.apache9.nedis;
+
+/**
+ * A facade of the connection pools of several databases on the same redis server.
+ * <p>
+ * Each database has its own connections which are selected once when established, so there is no
+ * SELECT on the command path. All the pools share one event loop group, the bootstraps and the
+ * memory budget.
+ * @author Apache9
+ */
+public interface NedisMultiDbPool extends AsyncCloseable {
+
+    /**
+     * return the pool of the given database, created on first use.
+     */
+    NedisClientPool pool(int database);
+
+    /**
+     * return a pooled client of the given database, see
+     * {@link com.github.apache9.nedis.util.NedisUtils#newPooledClient(NedisClientPool)}.
+     */
+    NedisClient client(int database);
+
+    int numDatabases();
+}
@@ -0,0 +1,122 @@
+package com.github.apache9.nedis;
+
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.apache9.nedis.util.NedisUtils;
+
+/**
+ * @author Apache9
+ */
+public class NedisMultiDbPoolImpl implements NedisMultiDbPool {
+
+    private final NedisClientPoolBuilder builder;
+
+    // the pool of the database set on the builder, created eagerly and shares the bootstraps with
+    // the pools of other databases.
+    private final NedisClientPoolImpl defaultPool;
+
+    private final AtomicReferenceArray<NedisClientPoolImpl> pools;
+
+    private final AtomicReferenceArray<NedisClient> clients;
+
+    private final Promise<Void> closePromise;
+
+    private boolean closed = false;
+
+    NedisMultiDbPoolImpl(NedisClientPoolBuilder builder, int numDatabases) {
+        this.builder = builder;
+        this.pools = new AtomicReferenceArray<>(numDatabases);
+        this.clients = new AtomicReferenceArray<>(numDatabases);
+        this.defaultPool = new NedisClientPoolImpl(builder);
+        pools.set(builder.database, defaultPool);
+        clients.set(builder.database, NedisUtils.newPooledClient(defaultPool));
+        this.closePromise = builder.group.next().newPromise();
+    }
+
+    private void checkDatabase(int database) {
+        if (database < 0 || database >= pools.length()) {
+            throw new IllegalArgumentException("database " + database + " is out of range [0, "
+                    + pools.length() + ")");
+        }
+    }
+
+    private synchronized NedisClientPoolImpl createPool(int database) {
+        NedisClientPoolImpl pool = pools.get(database);
+        if (pool != null) {
+            return pool;
+        }
+        if (closed) {
+            throw new IllegalStateException("pool is already closed");
+        }
+        pool = new NedisClientPoolImpl(builder, database, defaultPool);
+        clients.set(database, NedisUtils.newPooledClient(pool));
+        pools.set(database, pool);
+        return pool;
+    }
+
+    @Override
+    public NedisClientPool pool(int database) {
+        checkDatabase(database);
+        NedisClientPoolImpl pool = pools.get(database);
+        return pool != null ? pool : createPool(database);
+    }
+
+    @Override
+    public NedisClient client(int database) {
+        checkDatabase(database);
+        NedisClient client = clients.get(database);
+        if (client != null) {
+            return client;
+        }
+        createPool(database);
+        return clients.get(database);
+    }
+
+    @Override
+    public int numDatabases() {
+        return pools.length();
+    }
+
+    @Override
+    public Future<Void> closeFuture() {
+        return closePromise;
+    }
+
+    @Override
+    public Future<Void> close() {
+        synchronized (this) {
+            if (closed) {
+                return closePromise;
+            }
+            closed = true;
+        }
+        int numPools = 0;
+        for (int i = 0; i < pools.length(); i++) {
+            if (pools.get(i) != null) {
+                numPools++;
+            }
+        }
+        final AtomicInteger remaining = new AtomicInteger(numPools);
+        FutureListener<Void> listener = new FutureListener<Void>() {
+
+            @Override
+            public void operationComplete(Future<Void> future) throws Exception {
+                if (remaining.decrementAndGet() == 0) {
+                    closePromise.trySuccess(null);
+                }
+            }
+        };
+        for (int i = 0; i < pools.length(); i++) {
+            NedisClientPoolImpl pool = pools.get(i);
+            if (pool != null) {
+                pool.close().addListener(listener);
+            }
+        }
+        return closePromise;
+    }
+}
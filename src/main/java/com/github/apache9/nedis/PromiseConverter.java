@@ -3,6 +3,7 @@ package com.github.apache9.nedis;
 import static com.github.apache9.nedis.util.NedisUtils.bytesToDouble;
 import static com.github.apache9.nedis.util.NedisUtils.newBytesKeyMap;
 import static com.github.apache9.nedis.util.NedisUtils.newBytesSet;
+import io.netty.util.concurrent.DefaultPromise;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
@@ -35,8 +36,24 @@ abstract class PromiseConverter<T> {
 
     public abstract FutureListener<Object> newListener(Promise<T> promise);
 
-    public Promise<T> newPromise() {
-        return executor.newPromise();
+    /**
+     * Create a promise which will be notified by the listener returned by
+     * {@link #newListener(Promise)}. Cancelling the returned promise will also cancel the
+     * {@code rawPromise}, so the request will not be sent if it is still pending, and the
+     * response will be dropped without conversion.
+     */
+    public Promise<T> newPromise(final Promise<Object> rawPromise) {
+        return new DefaultPromise<T>(executor) {
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if (super.cancel(mayInterruptIfRunning)) {
+                    rawPromise.cancel(false);
+                    return true;
+                }
+                return false;
+            }
+        };
     }
 
     public static PromiseConverter<List<byte[]>> toList(EventExecutor executor) {
@@ -0,0 +1,14 @@
+package com.github.apache9.nedis;
+
+/**
+ * The callback of {@link NedisClientPool#transaction(TransactionCallback)}.
+ * @author Apache9
+ */
+public interface TransactionCallback {
+
+    /**
+     * Issue the commands of the transaction on the given client. The commands must be issued
+     * before this method returns, and the futures of them are notified after EXEC.
+     */
+    void execute(NedisClient client);
+}
@@ -0,0 +1,25 @@
+package com.github.apache9.nedis.exception;
+
+import java.io.IOException;
+
+/**
+ * Thrown when no connection becomes available within the acquire timeout of a bounded pool.
+ * 
+ * @author Apache9
+ */
+public class AcquireTimeoutException extends IOException {
+
+    private static final long serialVersionUID = -3164582927480173329L;
+
+    public static final AcquireTimeoutException INSTANCE = new AcquireTimeoutException();
+
+    private AcquireTimeoutException() {
+        super();
+    }
+
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
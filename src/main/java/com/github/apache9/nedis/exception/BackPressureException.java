@@ -0,0 +1,27 @@
+package com.github.apache9.nedis.exception;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is rejected because the connection is overloaded. The request is not sent
+ * to redis server, so it is safe to retry.
+ * 
+ * @author Apache9
+ */
+public class BackPressureException extends IOException {
+
+    private static final long serialVersionUID = -7325520806964366937L;
+
+    public static final BackPressureException INSTANCE = new BackPressureException(
+            "too many pending requests");
+
+    protected BackPressureException(String message) {
+        super(message);
+    }
+
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.github.apache9.nedis.exception;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a new connection is needed but the pool is backing off after connect failures. The
+ * cause is the last connect failure.
+ * 
+ * @author Apache9
+ */
+public class ConnectBackoffException extends IOException {
+
+    private static final long serialVersionUID = -6418034728710360925L;
+
+    public ConnectBackoffException(long retryInMs, Throwable cause) {
+        super("backing off after connect failure, retry in " + retryInMs + "ms", cause);
+    }
+
+    // could be thrown frequently when the server is down.
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
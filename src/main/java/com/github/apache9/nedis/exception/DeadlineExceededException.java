@@ -0,0 +1,26 @@
+package com.github.apache9.nedis.exception;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request exceeds its deadline before being sent to redis server, so it is safe to
+ * retry.
+ * 
+ * @author Apache9
+ */
+public class DeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 2960211582049541358L;
+
+    public static final DeadlineExceededException INSTANCE = new DeadlineExceededException();
+
+    private DeadlineExceededException() {
+        super();
+    }
+
+    @Override
+    public Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
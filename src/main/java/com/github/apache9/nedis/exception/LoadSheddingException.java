@@ -0,0 +1,18 @@
+package com.github.apache9.nedis.exception;
+
+/**
+ * Thrown when a request is rejected because the memory budget of the pool is exceeded. The request
+ * is not sent to redis server, so it is safe to retry.
+ * 
+ * @author Apache9
+ */
+public class LoadSheddingException extends BackPressureException {
+
+    private static final long serialVersionUID = 3307813582432452466L;
+
+    public static final LoadSheddingException INSTANCE = new LoadSheddingException();
+
+    private LoadSheddingException() {
+        super("memory budget exceeded");
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.apache9.nedis.handler;
+
+/**
+ * Decide how many writes of a connection could be batched into one flush.
+ * <p>
+ * It tracks the smoothed round trip time of the requests and the smoothed interval between writes.
+ * The time left by the latency SLO after the round trip is the max delay of a flush, and the number
+ * of writes expected to arrive within it is the batch size. If the connection is idle or the round
+ * trip time already reaches the SLO, the batch size is 1 which means flush immediately. Since the
+ * round trip time is measured from the start time of a request, it also contains the delay added by
+ * batching, so the delay shrinks by itself if batching makes the requests slower.
+ * <p>
+ * Not thread safe, should only be used in the event loop of the connection.
+ *
+ * @author Apache9
+ */
+public class FlushController {
+
+    // the weight of a new sample is 1/8, the same with the SRTT of TCP.
+    private static final int EWMA_SHIFT = 3;
+
+    private final long sloNs;
+
+    private final int maxBatch;
+
+    private long srttNs;
+
+    // start with the max value so we do not batch until we have seen enough writes.
+    private long intervalNs;
+
+    private long lastWriteNanoTime;
+
+    private boolean written;
+
+    public FlushController(long sloNs, int maxBatch) {
+        this.sloNs = sloNs;
+        this.maxBatch = maxBatch;
+        this.intervalNs = sloNs;
+    }
+
+    public long getSloNs() {
+        return sloNs;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    private static long ewma(long avg, long sample) {
+        return avg + ((sample - avg) >> EWMA_SHIFT);
+    }
+
+    /**
+     * Called when a request is written.
+     */
+    public void onWrite(long nanoTime) {
+        // an interval longer than the SLO is the same with idle.
+        long sample = written ? Math.min(nanoTime - lastWriteNanoTime, sloNs) : sloNs;
+        intervalNs = ewma(intervalNs, Math.max(sample, 0L));
+        lastWriteNanoTime = nanoTime;
+        written = true;
+    }
+
+    /**
+     * Called when a response is received.
+     */
+    public void onResponse(long rttNs) {
+        srttNs = ewma(srttNs, Math.max(rttNs, 0L));
+    }
+
+    public long getSrttNs() {
+        return srttNs;
+    }
+
+    public long getIntervalNs() {
+        return intervalNs;
+    }
+
+    /**
+     * Return the max time that a write could wait for others before being flushed.
+     */
+    public long delayNs() {
+        return Math.max(sloNs - srttNs, 0L);
+    }
+
+    /**
+     * Return the number of pending writes that should be flushed immediately, at least 1.
+     */
+    public int batchSize() {
+        if (intervalNs <= 0) {
+            return maxBatch;
+        }
+        return (int) Math.max(1L, Math.min(maxBatch, delayNs() / intervalNs));
+    }
+}
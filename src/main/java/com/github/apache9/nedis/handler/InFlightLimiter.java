@@ -0,0 +1,170 @@
+package com.github.apache9.nedis.handler;
+
+import io.netty.channel.Channel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.apache9.nedis.BackPressurePolicy;
+
+/**
+ * Limit the number of in-flight requests of a connection.
+ * <p>
+ * A permit is acquired by the caller before sending a request, and released by
+ * {@link RedisDuplexHandler} when the request is done. If maxInFlight is not positive then the
+ * limiter only counts the outstanding requests and never rejects.
+ * 
+ * @author Apache9
+ */
+public class InFlightLimiter {
+
+    private final int maxInFlight;
+
+    private final BackPressurePolicy policy;
+
+    private final boolean limited;
+
+    private final int maxPermits;
+
+    private final long parkTimeoutNs;
+
+    private final AtomicInteger permits = new AtomicInteger();
+
+    // only modified when holding the lock of this, so we can skip notifying when there are no
+    // waiters.
+    private volatile int waiters;
+
+    /**
+     * @param maxOverflow the size of the overflow queue, only used with
+     *            {@link BackPressurePolicy#QUEUE}.
+     * @param parkTimeoutNs the max time to block, only used with {@link BackPressurePolicy#PARK}.
+     *            0 means wait forever.
+     */
+    public InFlightLimiter(int maxInFlight, BackPressurePolicy policy, int maxOverflow,
+            long parkTimeoutNs) {
+        this.maxInFlight = maxInFlight;
+        this.policy = policy;
+        this.limited = maxInFlight > 0;
+        if (!limited) {
+            this.maxPermits = Integer.MAX_VALUE;
+        } else {
+            this.maxPermits = policy == BackPressurePolicy.QUEUE ? maxInFlight + maxOverflow
+                    : maxInFlight;
+        }
+        this.parkTimeoutNs = parkTimeoutNs;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public BackPressurePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * return false if this limiter only counts the outstanding requests.
+     */
+    public boolean isLimited() {
+        return limited;
+    }
+
+    private boolean tryAcquire(Channel channel) {
+        for (;;) {
+            int n = permits.get();
+            if (n >= maxPermits) {
+                return false;
+            }
+            // the overflow queue will take care of writability.
+            if (limited && policy != BackPressurePolicy.QUEUE && !channel.isWritable()) {
+                return false;
+            }
+            if (permits.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean park(Channel channel) {
+        long deadline = System.nanoTime() + parkTimeoutNs;
+        synchronized (this) {
+            waiters++;
+            try {
+                while (!tryAcquire(channel)) {
+                    if (!channel.isActive()) {
+                        // let it go, it will fail when writing.
+                        permits.incrementAndGet();
+                        return true;
+                    }
+                    if (parkTimeoutNs > 0) {
+                        long remainingNs = deadline - System.nanoTime();
+                        if (remainingNs <= 0) {
+                            return false;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+                    } else {
+                        wait();
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    /**
+     * Acquire a permit for sending a request.
+     * @return false if the request should be rejected.
+     */
+    public boolean acquire(Channel channel) {
+        if (!limited) {
+            permits.incrementAndGet();
+            return true;
+        }
+        if (tryAcquire(channel)) {
+            return true;
+        }
+        if (policy != BackPressurePolicy.PARK || channel.eventLoop().inEventLoop()) {
+            return false;
+        }
+        return park(channel);
+    }
+
+    /**
+     * Acquire a permit even if the limit is reached, used by the connection handshake which is
+     * sent before the connection is visible to others.
+     */
+    public void forceAcquire() {
+        permits.incrementAndGet();
+    }
+
+    /**
+     * Release a permit.
+     */
+    public void release() {
+        permits.decrementAndGet();
+        signal();
+    }
+
+    /**
+     * Wake up the parked callers, should be called when the state of the channel is changed.
+     */
+    public void signal() {
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * return the number of acquired permits.
+     */
+    public int permits() {
+        return permits.get();
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.apache9.nedis.handler;
+
+import io.netty.util.concurrent.Promise;
+
+/**
+ * A ring buffer of in-flight entries with power-of-two capacity. Every entry is stored in
+ * parallel arrays so no object is allocated per request.
+ * <p>
+ * An entry is addressed by its sequence, which is in [{@link #head()}, {@link #tail()}). The
+ * sequences may overflow, so always compare them with {@code ==} and {@code !=}.
+ * <p>
+ * Not thread safe, should only be used in the event loop.
+ * 
+ * @author Apache9
+ */
+final class InFlightRing {
+
+    private Promise<Object>[] promises;
+
+    private long[] nanoTimes;
+
+    private long[] timeoutNs;
+
+    private int mask;
+
+    private int head;
+
+    private int tail;
+
+    InFlightRing(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1;
+        alloc(capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void alloc(int capacity) {
+        promises = new Promise[capacity];
+        nanoTimes = new long[capacity];
+        timeoutNs = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        Promise<Object>[] oldPromises = promises;
+        long[] oldNanoTimes = nanoTimes;
+        long[] oldTimeoutNs = timeoutNs;
+        int oldMask = mask;
+        int size = size();
+        alloc(promises.length << 1);
+        for (int i = 0; i < size; i++) {
+            int oldIndex = (head + i) & oldMask;
+            promises[i] = oldPromises[oldIndex];
+            nanoTimes[i] = oldNanoTimes[oldIndex];
+            timeoutNs[i] = oldTimeoutNs[oldIndex];
+        }
+        head = 0;
+        tail = size;
+    }
+
+    /**
+     * A null promise means a TXN_MARKER.
+     */
+    void add(Promise<Object> promise, long nanoTime, long timeoutNs) {
+        if (size() == promises.length) {
+            grow();
+        }
+        int index = tail & mask;
+        promises[index] = promise;
+        nanoTimes[index] = nanoTime;
+        this.timeoutNs[index] = timeoutNs;
+        tail++;
+    }
+
+    /**
+     * Remove the head entry and return its promise. The caller should make sure that the ring is
+     * not empty.
+     */
+    Promise<Object> poll() {
+        int index = head & mask;
+        Promise<Object> promise = promises[index];
+        promises[index] = null;
+        head++;
+        return promise;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    int size() {
+        return tail - head;
+    }
+
+    int head() {
+        return head;
+    }
+
+    int tail() {
+        return tail;
+    }
+
+    Promise<Object> promise(int seq) {
+        return promises[seq & mask];
+    }
+
+    long nanoTime(int seq) {
+        return nanoTimes[seq & mask];
+    }
+
+    long timeoutNs(int seq) {
+        return timeoutNs[seq & mask];
+    }
+}
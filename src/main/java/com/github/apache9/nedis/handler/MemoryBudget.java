@@ -0,0 +1,82 @@
+package com.github.apache9.nedis.handler;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.apache9.nedis.protocol.CommandClass;
+
+/**
+ * Track the bytes of the requests waiting to be written and the replies waiting to be decoded
+ * across all the connections of a pool.
+ * 
+ * @author Apache9
+ */
+public class MemoryBudget {
+
+    private final long maxBytes;
+
+    // indexed by CommandClass.ordinal()
+    private final long[] limits;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public MemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+        CommandClass[] classes = CommandClass.values();
+        this.limits = new long[classes.length];
+        for (CommandClass cmdClass: classes) {
+            limits[cmdClass.ordinal()] = maxBytes * cmdClass.budgetPercent / 100;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Reserve bytes for a request.
+     * @return false if the request should be shed.
+     */
+    public boolean tryReserve(CommandClass cmdClass, long bytes) {
+        long limit = limits[cmdClass.ordinal()];
+        for (;;) {
+            long used = usedBytes.get();
+            if (used + bytes > limit) {
+                return false;
+            }
+            if (usedBytes.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reserve bytes unconditionally, used for the replies which are already received.
+     */
+    public void reserve(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Return a listener which releases the given bytes when the write is done.
+     */
+    public ChannelFutureListener releaseOnComplete(final long bytes) {
+        return new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                release(bytes);
+            }
+        };
+    }
+}
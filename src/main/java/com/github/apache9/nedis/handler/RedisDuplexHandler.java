@@ -6,18 +6,20 @@ import static com.github.apache9.nedis.protocol.RedisCommand.MULTI;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.PendingWriteQueue;
 import io.netty.handler.codec.UnsupportedMessageTypeException;
 import io.netty.handler.timeout.ReadTimeoutException;
 import io.netty.util.concurrent.Promise;
 
 import java.nio.channels.ClosedChannelException;
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
+import com.github.apache9.nedis.BackPressurePolicy;
+import com.github.apache9.nedis.exception.DeadlineExceededException;
 import com.github.apache9.nedis.exception.TxnAbortException;
 import com.github.apache9.nedis.exception.TxnDiscardException;
 import com.github.apache9.nedis.protocol.TransactionsCommands;
@@ -27,30 +29,106 @@ import com.github.apache9.nedis.protocol.TransactionsCommands;
  */
 public class RedisDuplexHandler extends ChannelDuplexHandler {
 
-    private static final class Entry {
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
 
-        public final Promise<Object> promise;
+    /**
+     * Returned by {@link #oldestNanoTime()} if there is no in-flight request.
+     */
+    public static final long NO_IN_FLIGHT = Long.MIN_VALUE;
 
-        public final long nanoTime;
+    private static final AtomicLongFieldUpdater<RedisDuplexHandler> OLDEST_NANO_TIME_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(RedisDuplexHandler.class, "oldestNanoTime");
 
-        public Entry(Promise<Object> promise, long nanoTime) {
-            this.promise = promise;
-            this.nanoTime = nanoTime;
-        }
-    }
-
-    private static final Entry TXN_MARKER = new Entry(null, 0);
-
-    private final Deque<Entry> entryQ = new ArrayDeque<>();
+    // An entry with a null promise is a TXN_MARKER. A negative timeoutNs of an entry means use the
+    // timeout of the connection.
+    private final InFlightRing entryQ;
 
     private long timeoutNs;
 
+    private TimeoutTask timeoutTaskRunner;
+
     private ScheduledFuture<?> timeoutTask;
 
+    // the deadline of timeoutTask, only valid when timeoutTask is not null.
+    private long timeoutDeadline;
+
     private boolean inMulti;
 
+    private final InFlightLimiter limiter;
+
+    // only used with BackPressurePolicy.QUEUE
+    private PendingWriteQueue overflowQ;
+
+    // the number of entries in entryQ except TXN_MARKER
+    private int numInFlight;
+
+    // the start time of the first entry which is not a TXN_MARKER. Only modified in the event loop
+    // with lazySet, and read by other threads to find out whether the connection is stuck.
+    private volatile long oldestNanoTime = NO_IN_FLIGHT;
+
+    private final MemoryBudget memoryBudget;
+
+    private final FlushController flushController;
+
+    // the number of requests written since the last flush, only used with flushController.
+    private int pendingWrites;
+
+    private FlushTask flushTaskRunner;
+
+    private ScheduledFuture<?> flushTask;
+
     public RedisDuplexHandler(long timeoutNs) {
+        this(timeoutNs, null);
+    }
+
+    public RedisDuplexHandler(long timeoutNs, InFlightLimiter limiter) {
+        this(timeoutNs, limiter, null);
+    }
+
+    /**
+     * @param limiter could be null which means no limit.
+     * @param memoryBudget the memory budget shared by all connections of a pool, could be null
+     *            which means no limit.
+     */
+    public RedisDuplexHandler(long timeoutNs, InFlightLimiter limiter, MemoryBudget memoryBudget) {
+        this(timeoutNs, limiter, memoryBudget, null);
+    }
+
+    /**
+     * @param flushController could be null which means always flush immediately.
+     */
+    public RedisDuplexHandler(long timeoutNs, InFlightLimiter limiter, MemoryBudget memoryBudget,
+            FlushController flushController) {
         this.timeoutNs = timeoutNs;
+        this.limiter = limiter;
+        this.memoryBudget = memoryBudget;
+        this.flushController = flushController;
+        this.entryQ = new InFlightRing(limiter != null && limiter.isLimited() ? limiter
+                .getMaxInFlight() : DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public InFlightLimiter getLimiter() {
+        return limiter;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public FlushController getFlushController() {
+        return flushController;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        timeoutTaskRunner = new TimeoutTask(ctx);
+        if (flushController != null) {
+            flushTaskRunner = new FlushTask(ctx);
+        }
+        if (limiter != null && limiter.isLimited()
+                && limiter.getPolicy() == BackPressurePolicy.QUEUE) {
+            overflowQ = new PendingWriteQueue(ctx);
+        }
     }
 
     public long getTimeoutNs() {
@@ -61,16 +139,108 @@ public class RedisDuplexHandler extends ChannelDuplexHandler {
         this.timeoutNs = timeoutNs;
     }
 
-    private void scheduleTimeoutTask(ChannelHandlerContext ctx) {
-        if (timeoutNs > 0 && timeoutTask == null) {
-            timeoutTask = ctx.executor().schedule(new TimeoutTask(ctx), timeoutNs,
-                    TimeUnit.NANOSECONDS);
+    /**
+     * Return the start time of the oldest in-flight request, or {@link #NO_IN_FLIGHT} if there is
+     * none. Could be called from any thread.
+     */
+    public long oldestNanoTime() {
+        return oldestNanoTime;
+    }
+
+    private void addEntry(ChannelHandlerContext ctx, Promise<Object> promise, long timeoutNs,
+            long nanoTime) {
+        entryQ.add(promise, nanoTime, timeoutNs);
+        if (++numInFlight == 1) {
+            OLDEST_NANO_TIME_UPDATER.lazySet(this, nanoTime);
+        }
+        long entryTimeoutNs = timeoutNs < 0 ? this.timeoutNs : timeoutNs;
+        if (entryTimeoutNs > 0) {
+            scheduleTimeoutTask(ctx, nanoTime + entryTimeoutNs);
         }
     }
 
+    private void addTxnMarker() {
+        entryQ.add(null, 0L, 0L);
+    }
+
+    // return null if the entry is a TXN_MARKER. The caller should make sure entryQ is not empty.
+    private Promise<Object> pollEntry() {
+        Promise<Object> promise = entryQ.poll();
+        if (promise != null) {
+            OLDEST_NANO_TIME_UPDATER.lazySet(this,
+                    --numInFlight == 0 ? NO_IN_FLIGHT : entryQ.nanoTime(firstEntry()));
+            releasePermit();
+        }
+        return promise;
+    }
+
+    private void releasePermit() {
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+
+    private long timeoutNs(int seq) {
+        long entryTimeoutNs = entryQ.timeoutNs(seq);
+        return entryTimeoutNs < 0 ? timeoutNs : entryTimeoutNs;
+    }
+
+    // return the sequence of the first entry which is not a TXN_MARKER, or entryQ.tail() if there
+    // is no such entry.
+    private int firstEntry() {
+        int seq = entryQ.head();
+        for (int tail = entryQ.tail(); seq != tail && entryQ.promise(seq) == null; seq++);
+        return seq;
+    }
+
+    // The timer is armed for the earliest deadline of the in-flight entries. An entry with an
+    // earlier deadline than the armed one rearms it, so a short per-call timeout is not stretched
+    // by a longer one written before it. Entries which are done before the timer fires only make
+    // it fire earlier than necessary, and TimeoutTask will rearm it.
+    private void scheduleTimeoutTask(ChannelHandlerContext ctx, long deadline) {
+        if (timeoutTask != null) {
+            if (deadline - timeoutDeadline >= 0) {
+                return;
+            }
+            timeoutTask.cancel(false);
+        }
+        timeoutDeadline = deadline;
+        timeoutTask = ctx.executor().schedule(timeoutTaskRunner, deadline - System.nanoTime(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    // A request which is already cancelled or exceeds its deadline or the timeout of the connection
+    // is failed locally without being sent. Return the cause if the request should be dropped, or
+    // null if it should be sent. Requests in MULTI are always sent as dropping them will change the
+    // transaction.
+    private Throwable dropCause(RedisRequest req) {
+        if (inMulti) {
+            return null;
+        }
+        Throwable cause = req.getPromise().cause();
+        if (cause != null) {
+            return cause;
+        }
+        long reqTimeoutNs = req.getTimeoutNs() < 0 ? timeoutNs : req.getTimeoutNs();
+        if (reqTimeoutNs > 0 && System.nanoTime() - req.getNanoTime() >= reqTimeoutNs) {
+            req.getPromise().tryFailure(DeadlineExceededException.INSTANCE);
+            return DeadlineExceededException.INSTANCE;
+        }
+        return null;
+    }
+
     private void writeNormal(ChannelHandlerContext ctx, RedisRequest req, ChannelPromise promise) {
-        entryQ.addLast(new Entry(req.getPromise(), System.nanoTime()));
-        ctx.write(req.getParams(), promise);
+        Throwable cause = dropCause(req);
+        if (cause != null) {
+            req.recycle();
+            releasePermit();
+            // nothing is written
+            promise.tryFailure(cause);
+            return;
+        }
+        addEntry(ctx, req.getPromise(), req.getTimeoutNs(), req.getNanoTime());
+        // the encoder will recycle it
+        ctx.write(req, promise);
     }
 
     // How to deal with txn:
@@ -84,40 +254,43 @@ public class RedisDuplexHandler extends ChannelDuplexHandler {
             case MULTI: {
                 if (inMulti) {
                     req.getPromise().tryFailure(new IllegalStateException("Already in MULTI"));
+                    releasePermit();
                     break;
                 }
                 inMulti = true;
                 ctx.write(new byte[][] {
                     MULTI.raw
                 }, promise);
-                entryQ.addLast(new Entry(req.getPromise(), System.nanoTime()));
-                entryQ.addLast(TXN_MARKER);
+                addEntry(ctx, req.getPromise(), req.getTimeoutNs(), req.getNanoTime());
+                addTxnMarker();
                 break;
             }
             case EXEC: {
                 if (!inMulti) {
                     req.getPromise().tryFailure(new IllegalStateException("not in MULTI"));
+                    releasePermit();
                     break;
                 }
                 ctx.write(new byte[][] {
                     EXEC.raw
                 }, promise);
                 inMulti = false;
-                entryQ.addLast(TXN_MARKER);
-                entryQ.addLast(new Entry(req.getPromise(), System.nanoTime()));
+                addTxnMarker();
+                addEntry(ctx, req.getPromise(), req.getTimeoutNs(), req.getNanoTime());
                 break;
             }
             case DISCARD: {
                 if (!inMulti) {
                     req.getPromise().tryFailure(new IllegalStateException("not in MULTI"));
+                    releasePermit();
                     break;
                 }
                 ctx.write(new byte[][] {
                     DISCARD.raw
                 }, promise);
                 inMulti = false;
-                entryQ.addLast(TXN_MARKER);
-                entryQ.addLast(new Entry(req.getPromise(), System.nanoTime()));
+                addTxnMarker();
+                addEntry(ctx, req.getPromise(), req.getTimeoutNs(), req.getNanoTime());
                 break;
             }
             default:
@@ -125,18 +298,107 @@ public class RedisDuplexHandler extends ChannelDuplexHandler {
         }
     }
 
-    @Override
-    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
-            throws Exception {
+    // fail the request and recycle it if possible.
+    private static void fail(Object msg, Throwable cause) {
+        if (msg instanceof RedisRequest) {
+            RedisRequest req = (RedisRequest) msg;
+            req.getPromise().tryFailure(cause);
+            req.recycle();
+        } else {
+            ((TxnRedisRequest) msg).getPromise().tryFailure(cause);
+        }
+    }
+
+    private void write0(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
         if (msg instanceof RedisRequest) {
             writeNormal(ctx, (RedisRequest) msg, promise);
-        } else if (msg instanceof TxnRedisRequest) {
-            writeTxn(ctx, (TxnRedisRequest) msg, promise);
         } else {
+            writeTxn(ctx, (TxnRedisRequest) msg, promise);
+        }
+    }
+
+    private boolean shouldOverflow(ChannelHandlerContext ctx) {
+        return overflowQ != null
+                && (!overflowQ.isEmpty() || numInFlight >= limiter.getMaxInFlight() || !ctx
+                        .channel().isWritable());
+    }
+
+    private void drainOverflow(ChannelHandlerContext ctx) {
+        if (overflowQ == null || overflowQ.isEmpty()) {
+            return;
+        }
+        boolean written = false;
+        while (!overflowQ.isEmpty() && numInFlight < limiter.getMaxInFlight()
+                && ctx.channel().isWritable()) {
+            Object msg = overflowQ.current();
+            write0(ctx, msg, overflowQ.remove());
+            written = true;
+        }
+        if (written) {
+            flushNow(ctx);
+        }
+    }
+
+    private void failOverflow(Throwable cause) {
+        if (overflowQ == null) {
+            return;
+        }
+        while (!overflowQ.isEmpty()) {
+            Object msg = overflowQ.current();
+            overflowQ.remove().tryFailure(cause);
+            fail(msg, cause);
+            releasePermit();
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            throws Exception {
+        if (!(msg instanceof RedisRequest) && !(msg instanceof TxnRedisRequest)) {
             throw new UnsupportedMessageTypeException(msg, RedisRequest.class,
                     TxnRedisRequest.class);
         }
-        scheduleTimeoutTask(ctx);
+        if (!ctx.channel().isActive()) {
+            // the entry will never be done if we add it to entryQ after channelInactive.
+            ClosedChannelException cause = new ClosedChannelException();
+            fail(msg, cause);
+            releasePermit();
+            promise.tryFailure(cause);
+            return;
+        }
+        if (shouldOverflow(ctx)) {
+            overflowQ.add(msg, promise);
+            return;
+        }
+        write0(ctx, msg, promise);
+        if (flushController != null) {
+            flushController.onWrite(System.nanoTime());
+            pendingWrites++;
+        }
+    }
+
+    // Flush immediately if the number of pending writes reaches the batch size given by
+    // flushController, otherwise delay the flush to wait for more writes.
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (flushController == null || pendingWrites == 0
+                || pendingWrites >= flushController.batchSize()) {
+            flushNow(ctx);
+            return;
+        }
+        if (flushTask == null) {
+            flushTask = ctx.executor().schedule(flushTaskRunner, flushController.delayNs(),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        pendingWrites = 0;
+        ctx.flush();
     }
 
     @Override
@@ -145,47 +407,72 @@ public class RedisDuplexHandler extends ChannelDuplexHandler {
             // this is the reply of a command in multi, just ignore
             return;
         }
-        Entry entry = entryQ.pollFirst();
-        if (entry == null) {
+        if (entryQ.isEmpty()) {
             throw new IllegalStateException("Got response " + msg + " but no one is waiting for it");
         }
-        if (entry == TXN_MARKER) {
+        if (flushController != null && entryQ.promise(entryQ.head()) != null) {
+            flushController.onResponse(System.nanoTime() - entryQ.nanoTime(entryQ.head()));
+        }
+        Promise<Object> promise = pollEntry();
+        if (promise == null) {
             if (msg == RedisResponseDecoder.NULL_REPLY) {
                 TxnAbortException cause = new TxnAbortException();
-                while ((entry = entryQ.pollFirst()) != TXN_MARKER) {
-                    entry.promise.tryFailure(cause);
+                while ((promise = pollEntry()) != null) {
+                    promise.tryFailure(cause);
                 }
             } else if (msg instanceof String) {
                 TxnDiscardException cause = new TxnDiscardException();
-                while ((entry = entryQ.pollFirst()) != TXN_MARKER) {
-                    entry.promise.tryFailure(cause);
+                while ((promise = pollEntry()) != null) {
+                    promise.tryFailure(cause);
                 }
             } else {
                 @SuppressWarnings("unchecked")
                 Iterator<Object> iter = ((List<Object>) msg).iterator();
-                while ((entry = entryQ.pollFirst()) != TXN_MARKER) {
-                    entry.promise.trySuccess(iter.next());
+                while ((promise = pollEntry()) != null) {
+                    promise.trySuccess(iter.next());
                 }
             }
-            entry = entryQ.pollFirst();
+            promise = pollEntry();
         }
-        entry.promise.trySuccess(msg);
+        promise.trySuccess(msg);
+        drainOverflow(ctx);
     }
 
     private void failAll(Throwable cause) {
-        for (Entry entry; (entry = entryQ.pollFirst()) != null;) {
-            if (entry == TXN_MARKER) {
-                continue;
+        while (!entryQ.isEmpty()) {
+            Promise<Object> promise = pollEntry();
+            if (promise != null) {
+                promise.tryFailure(cause);
             }
-            entry.promise.tryFailure(cause);
         }
+        failOverflow(cause);
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        if (!entryQ.isEmpty()) { // only create exception if necessary
+        // only create exception if necessary
+        if (!entryQ.isEmpty() || (overflowQ != null && !overflowQ.isEmpty())) {
             failAll(new ClosedChannelException());
         }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (limiter != null) {
+            limiter.signal();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            drainOverflow(ctx);
+            if (limiter != null) {
+                limiter.signal();
+            }
+        }
+        ctx.fireChannelWritabilityChanged();
     }
 
     @Override
@@ -202,32 +489,52 @@ public class RedisDuplexHandler extends ChannelDuplexHandler {
             this.ctx = ctx;
         }
 
+        // Since the responses are returned in order, an expired entry means the connection does
+        // not respond in time even if it is not the first one.
         @Override
         public void run() {
-            if (entryQ.isEmpty() || timeoutNs <= 0) {
-                timeoutTask = null;
-                return;
-            }
-            boolean refillTxnMarker = false;
-            if (entryQ.peekFirst() == TXN_MARKER) {
-                entryQ.removeFirst();
-                refillTxnMarker = true;
-            }
-            if (entryQ.isEmpty()) {
-                entryQ.addFirst(TXN_MARKER);
-                timeoutTask = null;
-                return;
-            }
-            long nextDelayNs = timeoutNs - (System.nanoTime() - entryQ.peek().nanoTime);
-            if (nextDelayNs <= 0) {
-                exceptionCaught(ctx, ReadTimeoutException.INSTANCE);
-            } else {
-                timeoutTask = ctx.executor().schedule(this, nextDelayNs, TimeUnit.NANOSECONDS);
-                if (refillTxnMarker) {
-                    entryQ.addFirst(TXN_MARKER);
+            timeoutTask = null;
+            long now = System.nanoTime();
+            boolean found = false;
+            long nextDeadline = 0L;
+            for (int seq = entryQ.head(), tail = entryQ.tail(); seq != tail; seq++) {
+                if (entryQ.promise(seq) == null) {
+                    continue;
                 }
+                long entryTimeoutNs = timeoutNs(seq);
+                if (entryTimeoutNs <= 0) {
+                    continue;
+                }
+                long deadline = entryQ.nanoTime(seq) + entryTimeoutNs;
+                if (deadline - now <= 0) {
+                    exceptionCaught(ctx, ReadTimeoutException.INSTANCE);
+                    return;
+                }
+                if (!found || deadline - nextDeadline < 0) {
+                    nextDeadline = deadline;
+                    found = true;
+                }
+            }
+            if (found) {
+                scheduleTimeoutTask(ctx, nextDeadline);
             }
         }
 
     }
+
+    private final class FlushTask implements Runnable {
+
+        private final ChannelHandlerContext ctx;
+
+        public FlushTask(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void run() {
+            flushTask = null;
+            flushNow(ctx);
+        }
+
+    }
 }
@@ -1,5 +1,6 @@
 package com.github.apache9.nedis.handler;
 
+import io.netty.util.Recycler;
 import io.netty.util.concurrent.Promise;
 
 /**
@@ -7,21 +8,105 @@ import io.netty.util.concurrent.Promise;
  */
 public class RedisRequest {
 
-    private final Promise<Object> promise;
+    /**
+     * timeout value which means use the timeout of the connection.
+     */
+    public static final long CONNECTION_TIMEOUT = -1L;
 
-    private final byte[][] params;
+    private static final Recycler<RedisRequest> RECYCLER = new Recycler<RedisRequest>() {
+
+        @Override
+        protected RedisRequest newObject(Handle handle) {
+            return new RedisRequest(handle);
+        }
+    };
+
+    private final Recycler.Handle handle;
+
+    private Promise<Object> promise;
+
+    // null means the command is the first element of params.
+    private byte[] cmd;
+
+    private byte[][] params;
+
+    private long timeoutNs;
+
+    private long nanoTime;
+
+    private RedisRequest(Recycler.Handle handle) {
+        this.handle = handle;
+    }
 
     public RedisRequest(Promise<Object> promise, byte[][] params) {
+        this(promise, params, CONNECTION_TIMEOUT, System.nanoTime());
+    }
+
+    /**
+     * @param timeoutNs the timeout of this request, 0 means no timeout, and
+     *            {@link #CONNECTION_TIMEOUT} means use the timeout of the connection.
+     * @param nanoTime the {@link System#nanoTime()} when this request is issued.
+     */
+    public RedisRequest(Promise<Object> promise, byte[][] params, long timeoutNs, long nanoTime) {
+        this.handle = null;
         this.promise = promise;
         this.params = params;
+        this.timeoutNs = timeoutNs;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Get a recycled request. The command is kept separately so we do not need to copy the
+     * params. It will be recycled by {@link RedisRequestEncoder} after encoding, or by
+     * {@link RedisDuplexHandler} if it is not sent, so do not touch it after writing it to a
+     * channel.
+     * @see #RedisRequest(Promise, byte[][], long, long)
+     */
+    public static RedisRequest newInstance(Promise<Object> promise, byte[] cmd, byte[][] params,
+            long timeoutNs, long nanoTime) {
+        RedisRequest req = RECYCLER.get();
+        req.promise = promise;
+        req.cmd = cmd;
+        req.params = params;
+        req.timeoutNs = timeoutNs;
+        req.nanoTime = nanoTime;
+        return req;
+    }
+
+    /**
+     * Return this request to the pool if it is created by
+     * {@link #newInstance(Promise, byte[], byte[][], long, long)}.
+     */
+    public void recycle() {
+        if (handle != null) {
+            promise = null;
+            cmd = null;
+            params = null;
+            RECYCLER.recycle(this, handle);
+        }
     }
 
     public Promise<Object> getPromise() {
         return promise;
     }
 
+    /**
+     * @return null if the command is the first element of {@link #getParams()}.
+     */
+    public byte[] getCmd() {
+        return cmd;
+    }
+
     public byte[][] getParams() {
         return params;
     }
 
+    public long getTimeoutNs() {
+        return timeoutNs;
+    }
+
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
 }
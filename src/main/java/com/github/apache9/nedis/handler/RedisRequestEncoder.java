@@ -13,9 +13,11 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 /**
+ * Encode a {@link RedisRequest} or a {@code byte[][]}.
+ * 
  * @author zhangduo
  */
-public class RedisRequestEncoder extends MessageToByteEncoder<byte[][]> {
+public class RedisRequestEncoder extends MessageToByteEncoder<Object> {
 
     private static final byte[] CRLF = new byte[] {
         '\r', '\n'
@@ -39,26 +41,62 @@ public class RedisRequestEncoder extends MessageToByteEncoder<byte[][]> {
     }
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, byte[][] msg, ByteBuf out) throws Exception {
-        out.writeByte('*').writeBytes(toBytes(msg.length)).writeBytes(CRLF);
-        for (byte[] param: msg) {
-            out.writeByte('$').writeBytes(toBytes(param.length)).writeBytes(CRLF).writeBytes(param)
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof RedisRequest || msg instanceof byte[][];
+    }
+
+    private void writeParam(ByteBuf out, byte[] param) {
+        out.writeByte('$').writeBytes(toBytes(param.length)).writeBytes(CRLF).writeBytes(param)
+                .writeBytes(CRLF);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) throws Exception {
+        if (msg instanceof RedisRequest) {
+            RedisRequest req = (RedisRequest) msg;
+            byte[] cmd = req.getCmd();
+            byte[][] params = req.getParams();
+            out.writeByte('*').writeBytes(toBytes(cmd != null ? params.length + 1 : params.length))
                     .writeBytes(CRLF);
+            if (cmd != null) {
+                writeParam(out, cmd);
+            }
+            for (byte[] param: params) {
+                writeParam(out, param);
+            }
+            req.recycle();
+        } else {
+            byte[][] params = (byte[][]) msg;
+            out.writeByte('*').writeBytes(toBytes(params.length)).writeBytes(CRLF);
+            for (byte[] param: params) {
+                writeParam(out, param);
+            }
         }
     }
 
-    private int serializedSize(byte[][] msg) {
-        int size = 1 + stringSize(msg.length) + 2;
-        for (byte[] param: msg) {
+    private static int serializedSize(byte[] cmd, byte[][] params) {
+        int size = 1 + stringSize(cmd != null ? params.length + 1 : params.length) + 2;
+        if (cmd != null) {
+            size += 1 + stringSize(cmd.length) + 2 + cmd.length + 2;
+        }
+        for (byte[] param: params) {
             size += 1 + stringSize(param.length) + 2 + param.length + 2;
         }
         return size;
     }
 
+    /**
+     * Return the number of bytes of the encoded request.
+     */
+    public static int serializedSize(RedisRequest req) {
+        return serializedSize(req.getCmd(), req.getParams());
+    }
+
     @Override
-    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, byte[][] msg, boolean preferDirect)
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Object msg, boolean preferDirect)
             throws Exception {
-        int size = serializedSize(msg);
+        int size = msg instanceof RedisRequest ? serializedSize((RedisRequest) msg)
+                : serializedSize(null, (byte[][]) msg);
         return preferDirect ? ctx.alloc().ioBuffer(size) : ctx.alloc().heapBuffer(size);
     }
 
@@ -21,6 +21,22 @@ public class RedisResponseDecoder extends ByteToMessageDecoder {
 
     public static final Object NULL_REPLY = new Object();
 
+    private final MemoryBudget memoryBudget;
+
+    // the bytes received but not decoded yet which are counted in memoryBudget.
+    private long bufferedBytes;
+
+    public RedisResponseDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param memoryBudget could be null which means do not track the buffered bytes.
+     */
+    public RedisResponseDecoder(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
     private void setReaderIndex(ByteBuf in, int index) {
         in.readerIndex(index == -1 ? in.writerIndex() : index + 1);
     }
@@ -173,8 +189,32 @@ public class RedisResponseDecoder extends ByteToMessageDecoder {
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
         in.markReaderIndex();
+        int readerIndex = in.readerIndex();
         if (!decode(in, out, NULL_REPLY)) {
             in.resetReaderIndex();
+        } else if (memoryBudget != null) {
+            int decodedBytes = in.readerIndex() - readerIndex;
+            bufferedBytes -= decodedBytes;
+            memoryBudget.release(decodedBytes);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (memoryBudget != null && msg instanceof ByteBuf) {
+            int bytes = ((ByteBuf) msg).readableBytes();
+            bufferedBytes += bytes;
+            memoryBudget.reserve(bytes);
+        }
+        super.channelRead(ctx, msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        super.channelInactive(ctx);
+        if (memoryBudget != null) {
+            memoryBudget.release(bufferedBytes);
+            bufferedBytes = 0;
         }
     }
 
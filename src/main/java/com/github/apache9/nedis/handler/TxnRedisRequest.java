@@ -13,9 +13,23 @@ public class TxnRedisRequest {
 
     private final RedisCommand cmd;
 
+    private final long timeoutNs;
+
+    private final long nanoTime;
+
     public TxnRedisRequest(Promise<Object> promise, RedisCommand cmd) {
+        this(promise, cmd, RedisRequest.CONNECTION_TIMEOUT, System.nanoTime());
+    }
+
+    /**
+     * @see RedisRequest#RedisRequest(Promise, byte[][], long, long)
+     */
+    public TxnRedisRequest(Promise<Object> promise, RedisCommand cmd, long timeoutNs,
+            long nanoTime) {
         this.promise = promise;
         this.cmd = cmd;
+        this.timeoutNs = timeoutNs;
+        this.nanoTime = nanoTime;
     }
 
     public Promise<Object> getPromise() {
@@ -26,4 +40,12 @@ public class TxnRedisRequest {
         return cmd;
     }
 
+    public long getTimeoutNs() {
+        return timeoutNs;
+    }
+
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
 }
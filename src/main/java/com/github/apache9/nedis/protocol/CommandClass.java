@@ -0,0 +1,95 @@
+package com.github.apache9.nedis.protocol;
+
+/**
+ * The class of a command, used to decide which commands should be shed first when the client is
+ * overloaded.
+ * 
+ * @author Apache9
+ */
+public enum CommandClass {
+
+    /**
+     * Commands which modify data, and all the connection and server commands. Only shed when the
+     * whole budget is exhausted.
+     */
+    WRITE(100),
+
+    /**
+     * Commands which read a bounded amount of data.
+     */
+    READ(75),
+
+    /**
+     * Commands which may return a large amount of data, such as KEYS, HGETALL and LRANGE. Shed
+     * first.
+     */
+    BULK_READ(50);
+
+    /**
+     * the percentage of the memory budget beyond which the commands of this class are rejected.
+     */
+    public final int budgetPercent;
+
+    CommandClass(int budgetPercent) {
+        this.budgetPercent = budgetPercent;
+    }
+
+    public static CommandClass of(RedisCommand cmd) {
+        switch (cmd) {
+            case BITCOUNT:
+            case BITPOS:
+            case DUMP:
+            case EXISTS:
+            case GET:
+            case GETBIT:
+            case GETRANGE:
+            case HEXISTS:
+            case HGET:
+            case HLEN:
+            case HMGET:
+            case LINDEX:
+            case LLEN:
+            case PFCOUNT:
+            case PTTL:
+            case RANDOMKEY:
+            case SCARD:
+            case SISMEMBER:
+            case STRLEN:
+            case SUBSTR:
+            case TTL:
+            case TYPE:
+            case ZCARD:
+            case ZCOUNT:
+            case ZLEXCOUNT:
+            case ZRANK:
+            case ZREVRANK:
+            case ZSCORE:
+                return READ;
+            case HGETALL:
+            case HKEYS:
+            case HSCAN:
+            case HVALS:
+            case KEYS:
+            case LRANGE:
+            case MGET:
+            case SCAN:
+            case SDIFF:
+            case SINTER:
+            case SMEMBERS:
+            case SORT:
+            case SRANDMEMBER:
+            case SSCAN:
+            case SUNION:
+            case ZRANGE:
+            case ZRANGEBYLEX:
+            case ZRANGEBYSCORE:
+            case ZREVRANGE:
+            case ZREVRANGEBYLEX:
+            case ZREVRANGEBYSCORE:
+            case ZSCAN:
+                return BULK_READ;
+            default:
+                return WRITE;
+        }
+    }
+}
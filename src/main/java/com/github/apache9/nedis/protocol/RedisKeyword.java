@@ -7,7 +7,7 @@ import java.nio.charset.StandardCharsets;
  */
 public enum RedisKeyword {
 
-    ALPHA, ASC, BY, COUNT, DESC, EX, EXISTS, FLUSH, GET, GETNAME, KILL, LIMIT, LIST, LOAD,
+    ALPHA, ASC, AUTH, BY, COUNT, DESC, EX, EXISTS, FLUSH, GET, GETNAME, KILL, LIMIT, LIST, LOAD,
     MATCH, NX, PX, REPLACE, RESETSTAT, REWRITE, SET, SETNAME, STORE, WITHSCORES, XX;
 
     public final byte[] raw;
@@ -1,14 +1,5 @@
 package com.github.apache9.nedis.util;
 
-import io.netty.util.concurrent.EventExecutor;
-import io.netty.util.concurrent.Future;
-import io.netty.util.concurrent.FutureListener;
-import io.netty.util.concurrent.Promise;
-
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -17,14 +8,8 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import javax.naming.OperationNotSupportedException;
-
-import com.github.apache9.nedis.AsyncCloseable;
-import com.github.apache9.nedis.ConnectionManagement;
 import com.github.apache9.nedis.NedisClient;
 import com.github.apache9.nedis.NedisClientPool;
-import com.github.apache9.nedis.protocol.BlockingListsCommands;
-import com.github.apache9.nedis.protocol.TransactionsCommands;
 
 /**
  * @author Apache9
@@ -77,149 +62,12 @@ public class NedisUtils {
         return params;
     }
 
-    private static EventExecutor getEventExecutor(Future<?> future) {
-        Class<?> clazz = future.getClass();
-        for (;;) {
-            try {
-                Method method = clazz.getDeclaredMethod("executor");
-                if (method != null) {
-                    method.setAccessible(true);
-                    return (EventExecutor) method.invoke(future);
-                }
-            } catch (NoSuchMethodException | SecurityException | IllegalAccessException
-                    | InvocationTargetException e) {
-                throw new RuntimeException(e);
-            }
-            clazz = clazz.getSuperclass();
-            if (clazz == null) {
-                return null;
-            }
-        }
-    }
-
-    private static final class Invoker implements InvocationHandler {
-
-        private final NedisClientPool pool;
-
-        public Invoker(NedisClientPool pool) {
-            this.pool = pool;
-        }
-
-        private void resetTimeout(final NedisClient client, long previousTimeoutMs) {
-            client.setTimeout(previousTimeoutMs).addListener(new FutureListener<Long>() {
-
-                @Override
-                public void operationComplete(Future<Long> future) throws Exception {
-                    if (future.getNow() != null) {
-                        client.release();
-                    }
-                }
-
-            });
-        }
-
-        @SuppressWarnings({
-            "unchecked", "rawtypes"
-        })
-        private void callBlocking(final NedisClient client, Method method, Object[] args,
-                final long previousTimeoutMs, final Promise promise) throws IllegalAccessException,
-                InvocationTargetException {
-            ((Future) method.invoke(client, args)).addListener(new FutureListener() {
-
-                @Override
-                public void operationComplete(Future future) throws Exception {
-                    if (future.isSuccess()) {
-                        promise.trySuccess(future.getNow());
-                    } else {
-                        promise.tryFailure(future.cause());
-                    }
-                    resetTimeout(client, previousTimeoutMs);
-                }
-            });
-        }
-
-        private void setInfiniteTimeout(final NedisClient client, final Method method,
-                final Object[] args, @SuppressWarnings("rawtypes") final Promise promise) {
-            client.setTimeout(0L).addListener(new FutureListener<Long>() {
-
-                @Override
-                public void operationComplete(Future<Long> future) throws Exception {
-                    // will not fail, but could be null
-                    Long previousTimeoutMs = future.get();
-                    if (previousTimeoutMs == null) {
-                        promise.tryFailure(new IllegalStateException("already closed"));
-                    } else {
-                        callBlocking(client, method, args, previousTimeoutMs.longValue(), promise);
-                    }
-                }
-            });
-        }
-
-        @SuppressWarnings({
-            "unchecked", "rawtypes"
-        })
-        private void call(final NedisClient client, Method method, Object[] args,
-                final Promise promise) throws IllegalAccessException, InvocationTargetException {
-            ((Future) method.invoke(client, args)).addListener(new FutureListener() {
-
-                @Override
-                public void operationComplete(Future future) throws Exception {
-                    if (future.isSuccess()) {
-                        promise.trySuccess(future.getNow());
-                    } else {
-                        promise.tryFailure(future.cause());
-                    }
-                    client.release();
-                }
-            });
-        }
-
-        @Override
-        public Object invoke(Object proxy, final Method method, final Object[] args)
-                throws Throwable {
-            // delegate Object methods like toString, hashCode, etc.
-            if (method.getDeclaringClass().equals(Object.class)) {
-                return method.invoke(this, args);
-            }
-            if (method.getDeclaringClass().equals(AsyncCloseable.class)) {
-                return method.invoke(pool, args);
-            }
-            if (method.getDeclaringClass().equals(ConnectionManagement.class)) {
-                throw new OperationNotSupportedException(
-                        "Can not call connection related methods on pooled client");
-            }
-            if (method.getDeclaringClass().equals(TransactionsCommands.class)) {
-                throw new OperationNotSupportedException(
-                        "Can not call transaction related methods on pooled client");
-            }
-            Future<NedisClient> clientFuture = pool.acquire();
-            @SuppressWarnings("rawtypes")
-            final Promise promise = getEventExecutor(clientFuture).newPromise();
-            clientFuture.addListener(new FutureListener<NedisClient>() {
-
-                @Override
-                public void operationComplete(Future<NedisClient> future) throws Exception {
-                    if (future.isSuccess()) {
-                        if (method.getDeclaringClass().equals(BlockingListsCommands.class)) {
-                            setInfiniteTimeout(future.getNow(), method, args, promise);
-                        } else {
-                            call(future.getNow(), method, args, promise);
-                        }
-                    } else {
-                        promise.tryFailure(future.cause());
-                    }
-                }
-            });
-            return promise;
-        }
-
-    }
-
+    /**
+     * return a {@link NedisClient} which acquires a client from the given pool for each command.
+     * The connection related and transaction related methods are not supported.
+     */
     public static NedisClient newPooledClient(NedisClientPool pool) {
-        return (NedisClient) Proxy.newProxyInstance(NedisClient.class.getClassLoader(),
-                new Class<?>[] {
-                    NedisClient.class
-                }, new Invoker(pool));
+        return new PooledNedisClient(pool, -1L, false, 0L);
     }
 
     public static final Comparator<byte[]> BYTES_COMPARATOR = new Comparator<byte[]>() {
@@ -0,0 +1,2053 @@
+package com.github.apache9.nedis.util;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.apache9.nedis.NedisClient;
+import com.github.apache9.nedis.NedisClientPool;
+import com.github.apache9.nedis.protocol.BitOp;
+import com.github.apache9.nedis.protocol.HashEntry;
+import com.github.apache9.nedis.protocol.ScanParams;
+import com.github.apache9.nedis.protocol.ScanResult;
+import com.github.apache9.nedis.protocol.SetParams;
+import com.github.apache9.nedis.protocol.SortParams;
+import com.github.apache9.nedis.protocol.SortedSetEntry;
+import com.github.apache9.nedis.protocol.ZSetOpParams;
+
+/**
+ * A {@link NedisClient} which acquires a connection from a {@link NedisClientPool} for each
+ * command and releases it after the command is done.
+ * <p>
+ * Every command is dispatched directly to the acquired client, there is no reflection on the call
+ * path.
+ * @author Apache9
+ */
+final class PooledNedisClient implements NedisClient {
+
+    private interface Call<T> {
+
+        Future<T> call(NedisClient client);
+    }
+
+    private final NedisClientPool pool;
+
+    // negative means not set.
+    private final long timeoutMs;
+
+    private final boolean hasDeadline;
+
+    private final long deadlineNanoTime;
+
+    PooledNedisClient(NedisClientPool pool, long timeoutMs, boolean hasDeadline,
+            long deadlineNanoTime) {
+        this.pool = pool;
+        this.timeoutMs = timeoutMs;
+        this.hasDeadline = hasDeadline;
+        this.deadlineNanoTime = deadlineNanoTime;
+    }
+
+    // For multi-key commands the first key is used.
+    private static byte[] firstKey(byte[][] keys) {
+        return keys.length > 0 ? keys[0] : null;
+    }
+
+    // For EVAL and EVALSHA, the keys are the first numKeys elements of keysvalues.
+    private static byte[] firstKey(int numKeys, byte[][] keysvalues) {
+        return numKeys > 0 && keysvalues.length > 0 ? keysvalues[0] : null;
+    }
+
+    private NedisClient withCallOptions(NedisClient client, boolean blocking) {
+        if (hasDeadline) {
+            return client.withDeadline(deadlineNanoTime);
+        }
+        if (timeoutMs >= 0) {
+            return client.withTimeout(timeoutMs);
+        }
+        // a blocking command should not be limited by the timeout of the connection.
+        return blocking ? client.withTimeout(0L) : client;
+    }
+
+    private <T> Future<T> callAcquired(final NedisClient client, Call<T> call, boolean blocking) {
+        Future<T> result = call.call(withCallOptions(client, blocking));
+        result.addListener(new FutureListener<T>() {
+
+            @Override
+            public void operationComplete(Future<T> future) throws Exception {
+                client.release();
+            }
+        });
+        return result;
+    }
+
+    private <T> Future<T> call(byte[] key, final Call<T> call, final boolean blocking) {
+        Future<NedisClient> clientFuture = blocking ? pool.acquireBlocking()
+                : key != null ? pool.acquire(key) : pool.acquire();
+        if (clientFuture.isDone()) {
+            // the common case, the result future of the client can be returned directly.
+            if (clientFuture.isSuccess()) {
+                return callAcquired(clientFuture.getNow(), call, blocking);
+            }
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture(clientFuture.cause());
+        }
+        // the promise is notified by the thread which completes it, i.e, the event loop of the
+        // acquired client.
+        final Promise<T> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        clientFuture.addListener(new FutureListener<NedisClient>() {
+
+            @Override
+            public void operationComplete(Future<NedisClient> future) throws Exception {
+                if (!future.isSuccess()) {
+                    promise.tryFailure(future.cause());
+                    return;
+                }
+                if (promise.isCancelled()) {
+                    future.getNow().release();
+                    return;
+                }
+                final Future<T> result = callAcquired(future.getNow(), call, blocking);
+                result.addListener(new FutureListener<T>() {
+
+                    @Override
+                    public void operationComplete(Future<T> future) throws Exception {
+                        if (future.isSuccess()) {
+                            promise.trySuccess(future.getNow());
+                        } else {
+                            promise.tryFailure(future.cause());
+                        }
+                    }
+                });
+                promise.addListener(new FutureListener<T>() {
+
+                    @Override
+                    public void operationComplete(Future<T> future) throws Exception {
+                        if (future.isCancelled()) {
+                            result.cancel(false);
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    private <T> Future<T> call(byte[] key, Call<T> call) {
+        return call(key, call, false);
+    }
+
+    private <T> Future<T> callBlocking(byte[] key, Call<T> call) {
+        return call(key, call, true);
+    }
+
+    private static UnsupportedOperationException connectionMethodNotSupported() {
+        return new UnsupportedOperationException(
+                "Can not call connection related methods on pooled client");
+    }
+
+    private static UnsupportedOperationException transactionMethodNotSupported() {
+        return new UnsupportedOperationException(
+                "Can not call transaction related methods on pooled client, "
+                        + "use NedisClientPool.transaction instead");
+    }
+
+    @Override
+    public Future<Void> closeFuture() {
+        return pool.closeFuture();
+    }
+
+    @Override
+    public Future<Void> close() {
+        return pool.close();
+    }
+
+    @Override
+    public Future<Long> setTimeout(long timeoutMs) {
+        throw connectionMethodNotSupported();
+    }
+
+    @Override
+    public EventLoop eventLoop() {
+        throw connectionMethodNotSupported();
+    }
+
+    @Override
+    public boolean isOpen() {
+        throw connectionMethodNotSupported();
+    }
+
+    @Override
+    public void release() {
+        throw connectionMethodNotSupported();
+    }
+
+    @Override
+    public Future<Void> discard() {
+        throw transactionMethodNotSupported();
+    }
+
+    @Override
+    public Future<List<Object>> exec() {
+        throw transactionMethodNotSupported();
+    }
+
+    @Override
+    public Future<Void> multi() {
+        throw transactionMethodNotSupported();
+    }
+
+    @Override
+    public Future<Void> unwatch() {
+        throw transactionMethodNotSupported();
+    }
+
+    @Override
+    public Future<Void> watch(byte[]... keys) {
+        throw transactionMethodNotSupported();
+    }
+
+    @Override
+    public NedisClient withTimeout(long timeoutMs) {
+        return new PooledNedisClient(pool, timeoutMs, false, 0L);
+    }
+
+    @Override
+    public NedisClient withDeadline(long deadlineNanoTime) {
+        return new PooledNedisClient(pool, -1L, true, deadlineNanoTime);
+    }
+
+    @Override
+    public Future<Long> append(final byte[] key, final byte[] value) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.append(key, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> auth(final byte[] password) {
+        return call(password, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.auth(password);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> bgrewriteaof() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.bgrewriteaof();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> bgsave() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.bgsave();
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> bitcount(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.bitcount(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> bitcount(final byte[] key, final long startInclusive,
+            final long endInclusive) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.bitcount(key, startInclusive, endInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> bitop(final BitOp op, final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.bitop(op, dst, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> bitpos(final byte[] key, final boolean bit) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.bitpos(key, bit);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> bitpos(final byte[] key, final boolean bit, final long startInclusive) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.bitpos(key, bit, startInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> bitpos(final byte[] key, final boolean bit, final long startInclusive,
+            final long endInclusive) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.bitpos(key, bit, startInclusive, endInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> blpop(final long timeoutSeconds, final byte[]... keys) {
+        return callBlocking(null, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.blpop(timeoutSeconds, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> brpop(final long timeoutSeconds, final byte[]... keys) {
+        return callBlocking(null, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.brpop(timeoutSeconds, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> brpoplpush(final byte[] src, final byte[] dst,
+            final long timeoutSeconds) {
+        return callBlocking(src, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.brpoplpush(src, dst, timeoutSeconds);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> clientGetname() {
+        return call(null, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.clientGetname();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> clientKill(final byte[] addr) {
+        return call(addr, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.clientKill(addr);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> clientList() {
+        return call(null, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.clientList();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> clientSetname(final byte[] name) {
+        return call(name, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.clientSetname(name);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> configGet(final byte[] pattern) {
+        return call(pattern, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.configGet(pattern);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> configResetstat() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.configResetstat();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> configRewrite() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.configRewrite();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> configSet(final byte[] name, final byte[] value) {
+        return call(name, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.configSet(name, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> dbsize() {
+        return call(null, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.dbsize();
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> decr(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.decr(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> decrBy(final byte[] key, final long delta) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.decrBy(key, delta);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> del(final byte[]... keys) {
+        return call(firstKey(keys), new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.del(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> dump(final byte[] key) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.dump(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> echo(final byte[] msg) {
+        return call(msg, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.echo(msg);
+            }
+        });
+    }
+
+    @Override
+    public Future<Object> eval(final byte[] script, final int numKeys, final byte[]... keysvalues) {
+        return call(firstKey(numKeys, keysvalues), new Call<Object>() {
+
+            @Override
+            public Future<Object> call(NedisClient client) {
+                return client.eval(script, numKeys, keysvalues);
+            }
+        });
+    }
+
+    @Override
+    public Future<Object> evalsha(final byte[] sha1, final int numKeys,
+            final byte[]... keysvalues) {
+        return call(firstKey(numKeys, keysvalues), new Call<Object>() {
+
+            @Override
+            public Future<Object> call(NedisClient client) {
+                return client.evalsha(sha1, numKeys, keysvalues);
+            }
+        });
+    }
+
+    @Override
+    public Future<Object> execCmd(final byte[] cmd, final byte[]... params) {
+        return call(firstKey(params), new Call<Object>() {
+
+            @Override
+            public Future<Object> call(NedisClient client) {
+                return client.execCmd(cmd, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> exists(final byte[] key) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.exists(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> expire(final byte[] key, final long seconds) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.expire(key, seconds);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> expireAt(final byte[] key, final long unixTimeSeconds) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.expireAt(key, unixTimeSeconds);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> flushall() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.flushall();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> flushdb() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.flushdb();
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> get(final byte[] key) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.get(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> getbit(final byte[] key, final long offset) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.getbit(key, offset);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> getrange(final byte[] key, final long startInclusive,
+            final long endInclusive) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.getrange(key, startInclusive, endInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> getset(final byte[] key, final byte[] value) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.getset(key, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> hdel(final byte[] key, final byte[]... fields) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.hdel(key, fields);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> hexists(final byte[] key, final byte[] field) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.hexists(key, field);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> hget(final byte[] key, final byte[] field) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.hget(key, field);
+            }
+        });
+    }
+
+    @Override
+    public Future<Map<byte[], byte[]>> hgetAll(final byte[] key) {
+        return call(key, new Call<Map<byte[], byte[]>>() {
+
+            @Override
+            public Future<Map<byte[], byte[]>> call(NedisClient client) {
+                return client.hgetAll(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> hincrby(final byte[] key, final byte[] field, final long delta) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.hincrby(key, field, delta);
+            }
+        });
+    }
+
+    @Override
+    public Future<Double> hincrbyfloat(final byte[] key, final byte[] field, final double delta) {
+        return call(key, new Call<Double>() {
+
+            @Override
+            public Future<Double> call(NedisClient client) {
+                return client.hincrbyfloat(key, field, delta);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> hkeys(final byte[] key) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.hkeys(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> hlen(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.hlen(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> hmget(final byte[] key, final byte[]... fields) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.hmget(key, fields);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> hmset(final byte[] key, final Map<byte[], byte[]> field2Value) {
+        return call(key, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.hmset(key, field2Value);
+            }
+        });
+    }
+
+    @Override
+    public Future<ScanResult<HashEntry>> hscan(final byte[] key, final ScanParams params) {
+        return call(key, new Call<ScanResult<HashEntry>>() {
+
+            @Override
+            public Future<ScanResult<HashEntry>> call(NedisClient client) {
+                return client.hscan(key, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> hset(final byte[] key, final byte[] field, final byte[] value) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.hset(key, field, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> hsetnx(final byte[] key, final byte[] field, final byte[] value) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.hsetnx(key, field, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> hvals(final byte[] key) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.hvals(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> incr(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.incr(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> incrBy(final byte[] key, final long delta) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.incrBy(key, delta);
+            }
+        });
+    }
+
+    @Override
+    public Future<Double> incrByFloat(final byte[] key, final double delta) {
+        return call(key, new Call<Double>() {
+
+            @Override
+            public Future<Double> call(NedisClient client) {
+                return client.incrByFloat(key, delta);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> info() {
+        return call(null, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.info();
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> info(final byte[] section) {
+        return call(section, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.info(section);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> keys(final byte[] pattern) {
+        return call(pattern, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.keys(pattern);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> lastsave() {
+        return call(null, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.lastsave();
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> lindex(final byte[] key, final long index) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.lindex(key, index);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> linsert(final byte[] key, final LIST_POSITION where, final byte[] pivot,
+            final byte[] value) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.linsert(key, where, pivot, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> llen(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.llen(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> lpop(final byte[] key) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.lpop(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> lpush(final byte[] key, final byte[]... values) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.lpush(key, values);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> lpushx(final byte[] key, final byte[] value) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.lpushx(key, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> lrange(final byte[] key, final long startInclusive,
+            final long stopInclusive) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.lrange(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> lrem(final byte[] key, final long count, final byte[] value) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.lrem(key, count, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> lset(final byte[] key, final long index, final byte[] value) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.lset(key, index, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> ltrim(final byte[] key, final long startInclusive,
+            final long stopInclusive) {
+        return call(key, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.ltrim(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> mget(final byte[]... keys) {
+        return call(firstKey(keys), new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.mget(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> migrate(final byte[] host, final int port, final byte[] key,
+            final int dstDb, final long timeoutMs) {
+        return call(host, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.migrate(host, port, key, dstDb, timeoutMs);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> move(final byte[] key, final int db) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.move(key, db);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> mset(final byte[]... keysvalues) {
+        return call(firstKey(keysvalues), new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.mset(keysvalues);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> msetnx(final byte[]... keysvalues) {
+        return call(firstKey(keysvalues), new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.msetnx(keysvalues);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> persist(final byte[] key) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.persist(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> pexpire(final byte[] key, final long millis) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.pexpire(key, millis);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> pexpireAt(final byte[] key, final long unixTimeMs) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.pexpireAt(key, unixTimeMs);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> pfadd(final byte[] key, final byte[]... elements) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.pfadd(key, elements);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> pfcount(final byte[]... keys) {
+        return call(firstKey(keys), new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.pfcount(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> pfmerge(final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.pfmerge(dst, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<String> ping() {
+        return call(null, new Call<String>() {
+
+            @Override
+            public Future<String> call(NedisClient client) {
+                return client.ping();
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> pttl(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.pttl(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> quit() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.quit();
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> randomkey() {
+        return call(null, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.randomkey();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> rename(final byte[] key, final byte[] newKey) {
+        return call(key, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.rename(key, newKey);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> renamenx(final byte[] key, final byte[] newKey) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.renamenx(key, newKey);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> restore(final byte[] key, final int ttlMs, final byte[] serializedValue,
+            final boolean replace) {
+        return call(key, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.restore(key, ttlMs, serializedValue, replace);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> role() {
+        return call(null, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.role();
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> rpop(final byte[] key) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.rpop(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> rpoplpush(final byte[] src, final byte[] dst) {
+        return call(src, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.rpoplpush(src, dst);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> rpush(final byte[] key, final byte[]... values) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.rpush(key, values);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> rpushx(final byte[] key, final byte[] value) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.rpushx(key, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> sadd(final byte[] key, final byte[]... members) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.sadd(key, members);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> save(final boolean save) {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.save(save);
+            }
+        });
+    }
+
+    @Override
+    public Future<ScanResult<byte[]>> scan(final ScanParams params) {
+        return call(null, new Call<ScanResult<byte[]>>() {
+
+            @Override
+            public Future<ScanResult<byte[]>> call(NedisClient client) {
+                return client.scan(params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> scard(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.scard(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<Boolean>> scriptExists(final byte[]... scripts) {
+        return call(firstKey(scripts), new Call<List<Boolean>>() {
+
+            @Override
+            public Future<List<Boolean>> call(NedisClient client) {
+                return client.scriptExists(scripts);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> scriptFlush() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.scriptFlush();
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> scriptKill() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.scriptKill();
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> scriptLoad(final byte[] script) {
+        return call(script, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.scriptLoad(script);
+            }
+        });
+    }
+
+    @Override
+    public Future<Set<byte[]>> sdiff(final byte[]... keys) {
+        return call(firstKey(keys), new Call<Set<byte[]>>() {
+
+            @Override
+            public Future<Set<byte[]>> call(NedisClient client) {
+                return client.sdiff(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> sdiffstore(final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.sdiffstore(dst, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> select(final int index) {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.select(index);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> set(final byte[] key, final byte[] value) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.set(key, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> set(final byte[] key, final byte[] value, final SetParams params) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.set(key, value, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> setbit(final byte[] key, final long offset, final boolean bit) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.setbit(key, offset, bit);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> setrange(final byte[] key, final long offset, final byte[] value) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.setrange(key, offset, value);
+            }
+        });
+    }
+
+    @Override
+    public Future<Set<byte[]>> sinter(final byte[]... keys) {
+        return call(firstKey(keys), new Call<Set<byte[]>>() {
+
+            @Override
+            public Future<Set<byte[]>> call(NedisClient client) {
+                return client.sinter(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> sinterstore(final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.sinterstore(dst, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> sismember(final byte[] key, final byte[] member) {
+        return call(key, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.sismember(key, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> slaveof(final String host, final int port) {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.slaveof(host, port);
+            }
+        });
+    }
+
+    @Override
+    public Future<Set<byte[]>> smembers(final byte[] key) {
+        return call(key, new Call<Set<byte[]>>() {
+
+            @Override
+            public Future<Set<byte[]>> call(NedisClient client) {
+                return client.smembers(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Boolean> smove(final byte[] src, final byte[] dst, final byte[] member) {
+        return call(src, new Call<Boolean>() {
+
+            @Override
+            public Future<Boolean> call(NedisClient client) {
+                return client.smove(src, dst, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> sort(final byte[] key) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.sort(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> sort(final byte[] key, final SortParams params) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.sort(key, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> sort(final byte[] key, final byte[] dst) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.sort(key, dst);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> sort(final byte[] key, final SortParams params, final byte[] dst) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.sort(key, params, dst);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> spop(final byte[] key) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.spop(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<byte[]> srandmember(final byte[] key) {
+        return call(key, new Call<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                return client.srandmember(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Set<byte[]>> srandmember(final byte[] key, final long count) {
+        return call(key, new Call<Set<byte[]>>() {
+
+            @Override
+            public Future<Set<byte[]>> call(NedisClient client) {
+                return client.srandmember(key, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> srem(final byte[] key, final byte[]... members) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.srem(key, members);
+            }
+        });
+    }
+
+    @Override
+    public Future<ScanResult<byte[]>> sscan(final byte[] key, final ScanParams params) {
+        return call(key, new Call<ScanResult<byte[]>>() {
+
+            @Override
+            public Future<ScanResult<byte[]>> call(NedisClient client) {
+                return client.sscan(key, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> strlen(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.strlen(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Set<byte[]>> sunion(final byte[]... keys) {
+        return call(firstKey(keys), new Call<Set<byte[]>>() {
+
+            @Override
+            public Future<Set<byte[]>> call(NedisClient client) {
+                return client.sunion(keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> sunionstore(final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.sunionstore(dst, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Void> sync() {
+        return call(null, new Call<Void>() {
+
+            @Override
+            public Future<Void> call(NedisClient client) {
+                return client.sync();
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> time() {
+        return call(null, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.time();
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> ttl(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.ttl(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<String> type(final byte[] key) {
+        return call(key, new Call<String>() {
+
+            @Override
+            public Future<String> call(NedisClient client) {
+                return client.type(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zadd(final byte[] key, final double score, final byte[] member) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zadd(key, score, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zadd(final byte[] key, final Map<byte[], Double> member2Score) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zadd(key, member2Score);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zcard(final byte[] key) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zcard(key);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zcount(final byte[] key, final byte[] min, final byte[] max) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zcount(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<Double> zincrby(final byte[] key, final double delta, final byte[] member) {
+        return call(key, new Call<Double>() {
+
+            @Override
+            public Future<Double> call(NedisClient client) {
+                return client.zincrby(key, delta, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zinterstore(final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zinterstore(dst, keys);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zinterstore(final byte[] dst, final ZSetOpParams params) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zinterstore(dst, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zlexcount(final byte[] key, final byte[] min, final byte[] max) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zlexcount(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrange(final byte[] key, final long startInclusive,
+            final long stopInclusive) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrange(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<SortedSetEntry>> zrangeWithScores(final byte[] key,
+            final long startInclusive, final long stopInclusive) {
+        return call(key, new Call<List<SortedSetEntry>>() {
+
+            @Override
+            public Future<List<SortedSetEntry>> call(NedisClient client) {
+                return client.zrangeWithScores(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrangebylex(final byte[] key, final byte[] min, final byte[] max) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrangebylex(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrangebylex(final byte[] key, final byte[] min, final byte[] max,
+            final long offset, final long count) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrangebylex(key, min, max, offset, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrangebyscore(final byte[] key, final byte[] min,
+            final byte[] max) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrangebyscore(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrangebyscore(final byte[] key, final byte[] min, final byte[] max,
+            final long offset, final long count) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrangebyscore(key, min, max, offset, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<SortedSetEntry>> zrangebyscoreWithScores(final byte[] key, final byte[] min,
+            final byte[] max) {
+        return call(key, new Call<List<SortedSetEntry>>() {
+
+            @Override
+            public Future<List<SortedSetEntry>> call(NedisClient client) {
+                return client.zrangebyscoreWithScores(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<SortedSetEntry>> zrangebyscoreWithScores(final byte[] key, final byte[] min,
+            final byte[] max, final long offset, final long count) {
+        return call(key, new Call<List<SortedSetEntry>>() {
+
+            @Override
+            public Future<List<SortedSetEntry>> call(NedisClient client) {
+                return client.zrangebyscoreWithScores(key, min, max, offset, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zrank(final byte[] key, final byte[] member) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zrank(key, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zrem(final byte[] key, final byte[]... members) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zrem(key, members);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zremrangebylex(final byte[] key, final byte[] min, final byte[] max) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zremrangebylex(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zremrangebyrank(final byte[] key, final long startInclusive,
+            final long stopInclusive) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zremrangebyrank(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zremrangebyscore(final byte[] key, final byte[] min, final byte[] max) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zremrangebyscore(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrevrange(final byte[] key, final long startInclusive,
+            final long stopInclusive) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrevrange(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<SortedSetEntry>> zrevrangeWithScores(final byte[] key,
+            final long startInclusive, final long stopInclusive) {
+        return call(key, new Call<List<SortedSetEntry>>() {
+
+            @Override
+            public Future<List<SortedSetEntry>> call(NedisClient client) {
+                return client.zrevrangeWithScores(key, startInclusive, stopInclusive);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrevrangebylex(final byte[] key, final byte[] min,
+            final byte[] max) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrevrangebylex(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrevrangebylex(final byte[] key, final byte[] min, final byte[] max,
+            final long offset, final long count) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrevrangebylex(key, min, max, offset, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrevrangebyscore(final byte[] key, final byte[] min,
+            final byte[] max) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrevrangebyscore(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<byte[]>> zrevrangebyscore(final byte[] key, final byte[] min,
+            final byte[] max, final long offset, final long count) {
+        return call(key, new Call<List<byte[]>>() {
+
+            @Override
+            public Future<List<byte[]>> call(NedisClient client) {
+                return client.zrevrangebyscore(key, min, max, offset, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<SortedSetEntry>> zrevrangebyscoreWithScores(final byte[] key,
+            final byte[] min, final byte[] max) {
+        return call(key, new Call<List<SortedSetEntry>>() {
+
+            @Override
+            public Future<List<SortedSetEntry>> call(NedisClient client) {
+                return client.zrevrangebyscoreWithScores(key, min, max);
+            }
+        });
+    }
+
+    @Override
+    public Future<List<SortedSetEntry>> zrevrangebyscoreWithScores(final byte[] key,
+            final byte[] min, final byte[] max, final long offset, final long count) {
+        return call(key, new Call<List<SortedSetEntry>>() {
+
+            @Override
+            public Future<List<SortedSetEntry>> call(NedisClient client) {
+                return client.zrevrangebyscoreWithScores(key, min, max, offset, count);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zrevrank(final byte[] key, final byte[] member) {
+        return call(key, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zrevrank(key, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<ScanResult<SortedSetEntry>> zscan(final byte[] key, final ScanParams params) {
+        return call(key, new Call<ScanResult<SortedSetEntry>>() {
+
+            @Override
+            public Future<ScanResult<SortedSetEntry>> call(NedisClient client) {
+                return client.zscan(key, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Double> zscore(final byte[] key, final byte[] member) {
+        return call(key, new Call<Double>() {
+
+            @Override
+            public Future<Double> call(NedisClient client) {
+                return client.zscore(key, member);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zunionstore(final byte[] dst, final ZSetOpParams params) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zunionstore(dst, params);
+            }
+        });
+    }
+
+    @Override
+    public Future<Long> zuniontore(final byte[] dst, final byte[]... keys) {
+        return call(dst, new Call<Long>() {
+
+            @Override
+            public Future<Long> call(NedisClient client) {
+                return client.zuniontore(dst, keys);
+            }
+        });
+    }
+}
@@ -1,6 +1,8 @@
 package com.github.apache9.nedis;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Apache9
@@ -12,8 +14,34 @@ public class RedisServer {
     private Process process;
 
     public RedisServer(int port) {
-        builder = new ProcessBuilder().command("redis-server", "--port", Long.toString(port))
-                .inheritIO();
+        this(port, null, null);
+    }
+
+    /**
+     * Also listen on the given unix domain socket.
+     */
+    public RedisServer(int port, String unixSocket) {
+        this(port, unixSocket, null);
+    }
+
+    /**
+     * @param unixSocket could be null which means only listen on the tcp port.
+     * @param password could be null which means no password is required.
+     */
+    public RedisServer(int port, String unixSocket, String password) {
+        List<String> command = new ArrayList<>();
+        command.add("redis-server");
+        command.add("--port");
+        command.add(Long.toString(port));
+        if (unixSocket != null) {
+            command.add("--unixsocket");
+            command.add(unixSocket);
+        }
+        if (password != null) {
+            command.add("--requirepass");
+            command.add(password);
+        }
+        builder = new ProcessBuilder().command(command).inheritIO();
     }
 
     public void start() throws IOException {
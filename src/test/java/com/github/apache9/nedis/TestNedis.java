@@ -9,23 +9,52 @@ import static com.github.apache9.nedis.util.NedisUtils.toBytes;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.github.apache9.nedis.exception.AcquireTimeoutException;
+import com.github.apache9.nedis.exception.BackPressureException;
+import com.github.apache9.nedis.exception.ConnectBackoffException;
+import com.github.apache9.nedis.exception.DeadlineExceededException;
+import com.github.apache9.nedis.exception.LoadSheddingException;
 import com.github.apache9.nedis.exception.RedisResponseException;
 import com.github.apache9.nedis.exception.TxnAbortException;
 import com.github.apache9.nedis.exception.TxnDiscardException;
+import com.github.apache9.nedis.protocol.BitOp;
 import com.github.apache9.nedis.util.NedisUtils;
 
 /**
@@ -111,6 +140,25 @@ public class TestNedis {
         assertEquals(0, pool.numConns());
     }
 
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testBootstrapConstructor() throws InterruptedException {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            Bootstrap bootstrap = new Bootstrap().group(group).channel(NioSocketChannel.class)
+                    .remoteAddress(new InetSocketAddress("127.0.0.1", PORT));
+            pool = new NedisClientPoolImpl(bootstrap, 1000, null, 1, toBytes("test"), 2, false);
+            NedisClient client = NedisUtils.newPooledClient(pool);
+            assertTrue(client.set(toBytes("foo"), toBytes("bar")).sync().getNow());
+            assertEquals("bar", bytesToString(client.get(toBytes("foo")).sync().getNow()));
+            assertEquals("test", bytesToString(client.clientGetname().sync().getNow()));
+            pool.close();
+            pool = null;
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
     @Test
     public void testTimeout() throws InterruptedException {
         pool = NedisClientPoolBuilder.builder()
@@ -127,6 +175,340 @@ public class TestNedis {
         assertEquals(0, pool.numConns());
     }
 
+    @Test
+    public void testCallTimeout() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).timeoutMs(100).build();
+        NedisClient client = pool.acquire().sync().getNow();
+        Future<List<byte[]>> blpopFuture = client.withTimeout(0).blpop(1, toBytes("foo"));
+        Thread.sleep(500);
+        assertFalse(blpopFuture.isDone());
+        assertNull(blpopFuture.sync().getNow());
+        assertTrue(client.isOpen());
+
+        Future<String> pingFuture = client.withDeadline(System.nanoTime() - 1).ping().await();
+        assertTrue(pingFuture.cause() instanceof DeadlineExceededException);
+        assertTrue(client.isOpen());
+
+        Future<?> future = client.withTimeout(200).blpop(1, toBytes("foo")).await();
+        assertTrue(future.cause() instanceof ReadTimeoutException);
+        client.closeFuture().await();
+        assertFalse(client.isOpen());
+    }
+
+    @Test
+    public void testParkTimeout() throws InterruptedException {
+        // no read timeout, so a stalled connection is never closed.
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).exclusive(true)
+                .maxInFlight(1).backPressurePolicy(BackPressurePolicy.PARK).parkTimeoutMs(100)
+                .build();
+        NedisClient client = pool.acquire().sync().getNow();
+        Future<List<byte[]>> blpopFuture = client.blpop(1, toBytes("foo"));
+        long startNs = System.nanoTime();
+        Future<byte[]> future = client.get(toBytes("foo")).await();
+        assertSame(BackPressureException.INSTANCE, future.cause());
+        assertTrue(System.nanoTime() - startNs >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertNull(blpopFuture.sync().getNow());
+        client.release();
+    }
+
+    @Test
+    public void testEventLoopAffinity() throws InterruptedException {
+        EventLoopGroup group = new NioEventLoopGroup(2);
+        try {
+            final NedisClientPool pool = NedisClientPoolBuilder.builder().group(group)
+                    .channel(NioSocketChannel.class)
+                    .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).maxPooledConns(1)
+                    .build();
+            this.pool = pool;
+            Callable<Future<NedisClient>> acquire = new Callable<Future<NedisClient>>() {
+
+                @Override
+                public Future<NedisClient> call() throws Exception {
+                    return pool.acquire();
+                }
+            };
+            // at least one connection for each event loop even if maxPooledConns is 1.
+            for (EventExecutor loop: group) {
+                NedisClient client = loop.submit(acquire).sync().getNow().sync().getNow();
+                assertSame(loop, client.eventLoop());
+                assertSame(client, loop.submit(acquire).sync().getNow().sync().getNow());
+            }
+            assertEquals(2, pool.numConns());
+            assertEquals(2, pool.numPooledConns());
+            pool.close().sync();
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testKeyAffinity() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).maxPooledConns(4)
+                .keyAffinity(true).build();
+        NedisClient client1 = pool.acquire(toBytes("foo")).sync().getNow();
+        assertSame(client1, pool.acquire(toBytes("foo")).sync().getNow());
+        for (int i = 0; i < 100; i++) {
+            pool.acquire(toBytes("key" + i)).sync();
+        }
+        assertEquals(4, pool.numConns());
+        assertEquals(4, pool.numPooledConns());
+
+        // commands on the same key are sent in order without waiting for the previous ones.
+        NedisClient client = NedisUtils.newPooledClient(pool);
+        Future<Boolean> setFuture = null;
+        Future<byte[]> getFuture = null;
+        for (int i = 0; i < 100; i++) {
+            setFuture = client.set(toBytes("foo"), toBytes("bar" + i));
+            getFuture = client.get(toBytes("foo"));
+        }
+        assertTrue(setFuture.sync().getNow());
+        assertEquals("bar99", bytesToString(getFuture.sync().getNow()));
+
+        client1.close().sync();
+        NedisClient client2 = pool.acquire(toBytes("foo")).sync().getNow();
+        assertTrue(client2.isOpen());
+        assertFalse(client1 == client2);
+    }
+
+    @Test
+    public void testKeyAffinityRouting() {
+        // record the routing key of each command without connecting to redis.
+        final List<String> keys = new ArrayList<>();
+        NedisClientPool stub = (NedisClientPool) Proxy.newProxyInstance(getClass()
+                .getClassLoader(), new Class<?>[] {
+            NedisClientPool.class
+        }, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("acquire")) {
+                    keys.add(args == null ? null : bytesToString((byte[]) args[0]));
+                }
+                return ImmediateEventExecutor.INSTANCE.newFailedFuture(new IOException("stub"));
+            }
+        });
+        NedisClient client = NedisUtils.newPooledClient(stub);
+        client.eval(toBytes("return 1"), 1, toBytes("k"), toBytes("v"));
+        client.evalsha(toBytes("sha"), 1, toBytes("k"), toBytes("v"));
+        client.eval(toBytes("return 1"), 0, toBytes("v"));
+        client.bitop(BitOp.AND, toBytes("dst"), toBytes("k1"), toBytes("k2"));
+        assertEquals(Arrays.asList("k", "k", null, "dst"), keys);
+    }
+
+    @Test
+    public void testBoundedPool() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).exclusive(true)
+                .maxConns(1).acquireTimeoutMs(200).build();
+        NedisClient client = pool.acquire().sync().getNow();
+        Future<NedisClient> waiter = pool.acquire();
+        assertFalse(waiter.isDone());
+        assertEquals(1, pool.numWaiters());
+        client.release();
+        assertSame(client, waiter.sync().getNow());
+        assertEquals(0, pool.numWaiters());
+
+        Future<NedisClient> timedOut = pool.acquire();
+        timedOut.await();
+        assertSame(AcquireTimeoutException.INSTANCE, timedOut.cause());
+        assertEquals(1, pool.numConns());
+        assertEquals(2, pool.numAcquireWaits());
+        assertTrue(pool.maxAcquireWaitNs() >= TimeUnit.MILLISECONDS.toNanos(200));
+
+        // a slot is released when the connection is closed.
+        waiter = pool.acquire();
+        client.close();
+        NedisClient newClient = waiter.sync().getNow();
+        assertFalse(client == newClient);
+        assertEquals(1, pool.numConns());
+        newClient.release();
+    }
+
+    @Test
+    public void testMinIdle() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).exclusive(true)
+                .maxPooledConns(4).minIdle(2).build();
+        while (pool.numPooledConns() < 2) {
+            Thread.sleep(10);
+        }
+        NedisClient client = pool.acquire().sync().getNow();
+        while (pool.numPooledConns() < 2) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, pool.numConns());
+        client.release();
+    }
+
+    @Test
+    public void testWarmUp() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).exclusive(true)
+                .maxPooledConns(4).minIdle(3).preloadScript("return 1").warmUp().sync().getNow();
+        assertTrue(pool.numPooledConns() >= 3);
+        // the connection used to load scripts may trigger one more connection for minIdle, which
+        // may still be connecting.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.numPooledConns() < pool.numConns() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(pool.numConns(), pool.numPooledConns());
+    }
+
+    @Test
+    public void testHandshake() throws IOException, InterruptedException {
+        // AUTH fails if the server does not require a password, so use a separated server.
+        int port = probeFreePort();
+        RedisServer redis = new RedisServer(port, null, "pw");
+        redis.start();
+        try {
+            waitUntilRedisUp(port, "pw");
+            for (boolean hello: new boolean[] {
+                false, true
+            }) {
+                NedisClientPool pool = NedisClientPoolBuilder.builder()
+                        .remoteAddress(new InetSocketAddress("127.0.0.1", port)).password("pw")
+                        .database(1).clientName("test-" + hello).hello(hello).exclusive(true)
+                        .build();
+                try {
+                    NedisClient client = pool.acquire().sync().getNow();
+                    assertEquals("test-" + hello,
+                            bytesToString(client.clientGetname().sync().getNow()));
+                    client.release();
+                } finally {
+                    pool.close().sync();
+                }
+            }
+        } finally {
+            redis.stop();
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).exclusive(true)
+                .maxPooledConns(4).minIdle(1).healthCheckIntervalMs(50).maxIdleTimeMs(200)
+                .build();
+        NedisClient client1 = pool.acquire().sync().getNow();
+        NedisClient client2 = pool.acquire().sync().getNow();
+        client1.release();
+        client2.release();
+        assertTrue(pool.numPooledConns() >= 2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.numConns() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // evicted down to minIdle
+        assertEquals(1, pool.numConns());
+        NedisClient client = pool.acquire().sync().getNow();
+        assertEquals("PONG", client.ping().sync().getNow());
+        client.release();
+    }
+
+    @Test
+    public void testHealthCheckUnderLoadShedding() throws InterruptedException {
+        // every request is shed, but that does not mean the connection is broken.
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).exclusive(true)
+                .memoryBudgetBytes(1).healthCheckIntervalMs(50).build();
+        NedisClient client = pool.acquire().sync().getNow();
+        assertTrue(client.ping().await().cause() instanceof LoadSheddingException);
+        client.release();
+        Thread.sleep(300);
+        assertTrue(client.isOpen());
+        assertEquals(1, pool.numConns());
+        assertSame(client, pool.acquire().sync().getNow());
+        client.release();
+    }
+
+    @Test
+    public void testConnectBackoff() throws IOException, InterruptedException {
+        NedisClientPool pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", probeFreePort()))
+                .connectBackoffBaseMs(500).connectBackoffMaxMs(500).build();
+        try {
+            Future<NedisClient> f = pool.acquire().await();
+            assertTrue(f.cause() instanceof ConnectException);
+            // fail fast without connecting
+            f = pool.acquire();
+            assertTrue(f.cause() instanceof ConnectBackoffException);
+            assertSame(ConnectException.class, f.cause().getCause().getClass());
+            assertEquals(0, pool.numConns());
+
+            Thread.sleep(600);
+            f = pool.acquire().await();
+            assertTrue(f.cause() instanceof ConnectException);
+        } finally {
+            pool.close().sync();
+        }
+    }
+
+    @Test
+    public void testConnectBackoffBurst() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        final NedisClientPool pool = NedisClientPoolBuilder.builder().group(group)
+                .remoteAddress(new InetSocketAddress("127.0.0.1", probeFreePort()))
+                .channel(NioSocketChannel.class).exclusive(true).maxPooledConns(8)
+                .connectBackoffBaseMs(200).connectBackoffMaxMs(10000).build();
+        try {
+            // start all the connects in one task of the only event loop, so none of them can
+            // complete before the others are started.
+            List<Future<NedisClient>> futures = group.submit(
+                    new Callable<List<Future<NedisClient>>>() {
+
+                        @Override
+                        public List<Future<NedisClient>> call() {
+                            List<Future<NedisClient>> futures = new ArrayList<>();
+                            for (int i = 0; i < 8; i++) {
+                                futures.add(pool.acquire());
+                            }
+                            return futures;
+                        }
+                    }).sync().getNow();
+            for (Future<NedisClient> f: futures) {
+                assertTrue(f.await().cause() instanceof ConnectException);
+            }
+            assertTrue(pool.acquire().cause() instanceof ConnectBackoffException);
+            // the burst counts as one failure, so the backoff is at most the base.
+            Thread.sleep(300);
+            assertTrue(pool.acquire().await().cause() instanceof ConnectException);
+        } finally {
+            pool.close().sync();
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testAutoScaling() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).maxPooledConns(4)
+                .autoScaleIntervalMs(20).scaleUpDepth(2).scaleDownDepth(1).build();
+        NedisClient client = pool.acquire().sync().getNow();
+        assertEquals(1, pool.numConns());
+        // a lone blocking command is not a reason to scale up
+        Future<List<byte[]>> blpopFuture = client.blpop(2, toBytes("foo"));
+        Thread.sleep(200);
+        assertEquals(1, pool.numConns());
+        // queue requests behind the blocking command
+        for (int i = 0; i < 9; i++) {
+            client.get(toBytes("bar"));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.numConns() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, pool.numConns());
+        blpopFuture.sync();
+        while (pool.numConns() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, pool.numConns());
+    }
+
     @Test
     public void testBlockingCommands() throws InterruptedException {
         pool = NedisClientPoolBuilder.builder()
@@ -158,6 +540,250 @@ public class TestNedis {
         assertEquals("b", bytesToString(brpoplpushFuture.getNow()));
     }
 
+    @Test
+    public void testBlockingSubPool() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).timeoutMs(100)
+                .maxPooledConns(1).maxBlockingConns(1).build();
+        NedisClient client = NedisUtils.newPooledClient(pool);
+        Future<List<byte[]>> brpopFuture = client.brpop(100, toBytes("foo"));
+        Thread.sleep(500);
+        assertFalse(brpopFuture.isDone());
+        // the blocking command does not occupy the connections for other commands.
+        assertTrue(client.set(toBytes("k"), toBytes("v")).sync().getNow().booleanValue());
+        assertEquals("v", bytesToString(client.get(toBytes("k")).sync().getNow()));
+
+        // wait for the only blocking connection.
+        Future<List<byte[]>> blpopFuture = client.blpop(100, toBytes("bar"));
+        Thread.sleep(500);
+        assertFalse(blpopFuture.isDone());
+
+        client.lpush(toBytes("foo"), toBytes("v1")).sync();
+        List<byte[]> brpopResp = brpopFuture.sync().getNow();
+        assertEquals("foo", bytesToString(brpopResp.get(0)));
+        assertEquals("v1", bytesToString(brpopResp.get(1)));
+
+        client.lpush(toBytes("bar"), toBytes("v2")).sync();
+        List<byte[]> blpopResp = blpopFuture.sync().getNow();
+        assertEquals("bar", bytesToString(blpopResp.get(0)));
+        assertEquals("v2", bytesToString(blpopResp.get(1)));
+    }
+
+    @Test
+    public void testPinnedConnection() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).timeoutMs(1000).build();
+        final List<Future<Boolean>> setFutures = new ArrayList<>();
+        List<Object> execResult = pool.transaction(new TransactionCallback() {
+
+            @Override
+            public void execute(NedisClient client) {
+                setFutures.add(client.set(toBytes("k1"), toBytes("v1")));
+                setFutures.add(client.set(toBytes("k2"), toBytes("v2")));
+            }
+        }).sync().getNow();
+        assertEquals(2, execResult.size());
+        assertEquals("OK", execResult.get(0).toString());
+        assertEquals("OK", execResult.get(1).toString());
+        assertTrue(setFutures.get(0).getNow().booleanValue());
+        assertTrue(setFutures.get(1).getNow().booleanValue());
+
+        Future<List<Object>> failed = pool.transaction(new TransactionCallback() {
+
+            @Override
+            public void execute(NedisClient client) {
+                client.set(toBytes("k3"), toBytes("v3"));
+                throw new IllegalStateException("abort");
+            }
+        }).await();
+        assertTrue(failed.cause() instanceof IllegalStateException);
+
+        byte[] value = pool.withConnection(new ConnectionCallback<byte[]>() {
+
+            @Override
+            public Future<byte[]> call(NedisClient client) {
+                client.set(toBytes("k1"), toBytes("v4"));
+                return client.get(toBytes("k1"));
+            }
+        }).sync().getNow();
+        assertEquals("v4", bytesToString(value));
+        NedisClient client = NedisUtils.newPooledClient(pool);
+        assertNull(client.get(toBytes("k3")).sync().getNow());
+        assertEquals("v2", bytesToString(client.get(toBytes("k2")).sync().getNow()));
+    }
+
+    @Test
+    public void testMultiDb() throws InterruptedException {
+        NedisMultiDbPool multiDbPool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).timeoutMs(1000)
+                .buildMultiDb(4);
+        try {
+            for (int db = 0; db < multiDbPool.numDatabases(); db++) {
+                multiDbPool.client(db).set(toBytes("db"), toBytes(db)).sync();
+            }
+            for (int db = 0; db < multiDbPool.numDatabases(); db++) {
+                assertEquals(Integer.toString(db),
+                        bytesToString(multiDbPool.client(db).get(toBytes("db")).sync().getNow()));
+            }
+            assertSame(multiDbPool.pool(2), multiDbPool.pool(2));
+        } finally {
+            multiDbPool.close().sync();
+        }
+        for (int db = 0; db < multiDbPool.numDatabases(); db++) {
+            assertEquals(0, multiDbPool.pool(db).numConns());
+        }
+    }
+
+    @Test
+    public void testTransport() throws InterruptedException {
+        for (boolean nativeTransport: new boolean[] {
+            false, true
+        }) {
+            NedisClientPool pool = NedisClientPoolBuilder.builder()
+                    .remoteAddress(new InetSocketAddress("127.0.0.1", PORT))
+                    .nativeTransport(nativeTransport).edgeTriggered(false).tcpNoDelay(true)
+                    .build();
+            try {
+                NedisClient client = NedisUtils.newPooledClient(pool);
+                assertTrue(client.set(toBytes("k"), toBytes("v")).sync().getNow().booleanValue());
+                assertEquals("v", bytesToString(client.get(toBytes("k")).sync().getNow()));
+            } finally {
+                pool.close().sync();
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentSubmit() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).timeoutMs(5000)
+                .maxPooledConns(1).build();
+        final NedisClient client = pool.acquire().sync().getNow();
+        int numThreads = 8;
+        final int numIncrs = 1000;
+        final List<Future<Long>> lastFutures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final byte[] key = toBytes("counter-" + i);
+            Thread t = new Thread() {
+
+                @Override
+                public void run() {
+                    Future<Long> f = null;
+                    for (int j = 0; j < numIncrs; j++) {
+                        f = client.incr(key);
+                    }
+                    synchronized (lastFutures) {
+                        lastFutures.add(f);
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        // the requests of one thread are written in order, so the last one sees all the others.
+        for (Future<Long> f: lastFutures) {
+            assertEquals(numIncrs, f.sync().getNow().longValue());
+        }
+    }
+
+    @Test
+    public void testAdaptiveFlush() throws InterruptedException {
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).timeoutMs(5000)
+                .maxPooledConns(1).flushLatencySloUs(1000).maxFlushBatch(16).build();
+        NedisClient client = pool.acquire().sync().getNow();
+        byte[] key = toBytes("counter");
+        int numIncrs = 1000;
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < numIncrs; i++) {
+            futures.add(client.incr(key));
+        }
+        for (int i = 0; i < numIncrs; i++) {
+            assertEquals(i + 1, futures.get(i).sync().getNow().longValue());
+        }
+        // a single request is not stuck even if there are no more requests to batch with it.
+        assertEquals(numIncrs + 1, client.incr(key).sync().getNow().longValue());
+    }
+
+    @Test
+    public void testSocketOptions() throws InterruptedException {
+        // the native library of epoll can not read SO_KEEPALIVE back, so use NIO.
+        pool = NedisClientPoolBuilder.builder()
+                .remoteAddress(new InetSocketAddress("127.0.0.1", PORT)).nativeTransport(false)
+                .exclusive(true)
+                .keepAlive(true).sendBufferSize(64 * 1024).receiveBufferSize(64 * 1024)
+                .writeBufferWaterMark(8 * 1024, 16 * 1024)
+                .allocator(UnpooledByteBufAllocator.DEFAULT)
+                .recvByteBufAllocator(new FixedRecvByteBufAllocator(2048)).maxBlockingConns(1)
+                .build();
+        NedisClientImpl client = (NedisClientImpl) pool.acquire().sync().getNow();
+        ChannelConfig config = client.channel().config();
+        assertTrue(config.getOption(ChannelOption.SO_KEEPALIVE).booleanValue());
+        assertTrue(config.getOption(ChannelOption.TCP_NODELAY).booleanValue());
+        assertEquals(8 * 1024, config.getWriteBufferLowWaterMark());
+        assertEquals(16 * 1024, config.getWriteBufferHighWaterMark());
+        assertSame(UnpooledByteBufAllocator.DEFAULT, config.getAllocator());
+        assertTrue(config.getRecvByteBufAllocator() instanceof FixedRecvByteBufAllocator);
+        assertTrue(client.set(toBytes("k"), toBytes("v")).sync().getNow().booleanValue());
+        client.release();
+
+        // the connections of the blocking sub pool use the same settings.
+        client = (NedisClientImpl) pool.acquireBlocking().sync().getNow();
+        config = client.channel().config();
+        assertTrue(config.getOption(ChannelOption.SO_KEEPALIVE).booleanValue());
+        assertEquals(8 * 1024, config.getWriteBufferLowWaterMark());
+        assertEquals(16 * 1024, config.getWriteBufferHighWaterMark());
+        client.release();
+    }
+
+    @Test
+    public void testUnixDomainSocket() throws IOException, InterruptedException {
+        assumeTrue(Epoll.isAvailable());
+        int port = probeFreePort();
+        File socket = new File(System.getProperty("java.io.tmpdir"), "nedis-" + port + ".sock");
+        RedisServer redis = new RedisServer(port, socket.getAbsolutePath());
+        redis.start();
+        try {
+            waitUntilRedisUp(port);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!socket.exists()) {
+                if (System.currentTimeMillis() >= deadline) {
+                    fail("redis does not create " + socket + " in 5 seconds");
+                }
+                Thread.sleep(10);
+            }
+            pool = NedisClientPoolBuilder.builder().remoteAddress(socket.getAbsolutePath())
+                    .timeoutMs(1000).build();
+            NedisClient client = NedisUtils.newPooledClient(pool);
+            assertEquals("PONG", client.ping().sync().getNow());
+            assertTrue(client.set(toBytes("k"), toBytes("v")).sync().getNow().booleanValue());
+            assertEquals("v", bytesToString(client.get(toBytes("k")).sync().getNow()));
+            pool.close().sync();
+            pool = null;
+        } finally {
+            redis.stop();
+            socket.delete();
+        }
+    }
+
+    @Test
+    public void testUnixDomainSocketWithNio() {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            NedisClientPoolBuilder.builder().group(group).channel(NioSocketChannel.class)
+                    .remoteAddress("/tmp/redis.sock").build();
+            fail("NIO channel can not connect to unix domain socket");
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
     private void testTxn(NedisClient txnClient, NedisClient chkClient) throws InterruptedException {
         Future<Void> multiFuture = txnClient.multi();
         Future<Boolean> setFuture1 = txnClient.set(toBytes("k1"), toBytes("v1"));
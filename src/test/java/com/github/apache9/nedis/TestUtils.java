@@ -37,8 +37,16 @@ public class TestUtils {
     }
 
     public static void waitUntilRedisUp(int port) throws InterruptedException {
-        NedisClientPool pool = NedisClientPoolBuilder.builder().remoteAddress("127.0.0.1", port)
-                .maxPooledConns(1).timeoutMs(100).build();
+        waitUntilRedisUp(port, null);
+    }
+
+    public static void waitUntilRedisUp(int port, String password) throws InterruptedException {
+        NedisClientPoolBuilder builder = NedisClientPoolBuilder.builder()
+                .remoteAddress("127.0.0.1", port).maxPooledConns(1).timeoutMs(100);
+        if (password != null) {
+            builder.password(password);
+        }
+        NedisClientPool pool = builder.build();
         for (;;) {
             try {
                 if ("PONG".equals(pool.acquire().syncUninterruptibly().getNow().ping()
@@ -0,0 +1,112 @@
+package com.github.apache9.nedis.benchmark;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.apache9.nedis.NedisClient;
+import com.github.apache9.nedis.NedisClientPool;
+import com.github.apache9.nedis.NedisClientPoolBuilder;
+
+/**
+ * Measure the contention of {@link NedisClientPool#acquire()} and
+ * {@link NedisClientPool#release(NedisClient)}. The connections are made to an in-JVM local server
+ * so only the pool itself is measured.
+ * <p>
+ * Run {@link #main(String[])} to run it with 1 to 128 threads.
+ * 
+ * @author Apache9
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolContentionBenchmark {
+
+    private static final int MAX_THREADS = 128;
+
+    // the server does nothing as we only open connections.
+    @Sharable
+    private static final class NoopHandler extends ChannelInboundHandlerAdapter {
+    }
+
+    @Param({
+        "false", "true"
+    })
+    public boolean exclusive;
+
+    private EventLoopGroup group;
+
+    private Channel serverChannel;
+
+    private NedisClientPool pool;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        group = new NioEventLoopGroup();
+        LocalAddress address = new LocalAddress(PoolContentionBenchmark.class.getSimpleName());
+        serverChannel = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                .childHandler(new NoopHandler()).bind(address).sync().channel();
+        pool = NedisClientPoolBuilder.builder().group(group).channel(LocalChannel.class)
+                .remoteAddress(address).maxPooledConns(MAX_THREADS).exclusive(exclusive).build();
+        // open all connections first so we will not measure connecting.
+        List<NedisClient> clients = new ArrayList<>();
+        for (int i = 0; i < MAX_THREADS; i++) {
+            clients.add(pool.acquire().sync().getNow());
+        }
+        for (NedisClient client: clients) {
+            pool.release(client);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.close().sync();
+        serverChannel.close().sync();
+        group.shutdownGracefully().sync();
+    }
+
+    @Benchmark
+    public NedisClient acquireRelease() throws InterruptedException {
+        NedisClient client = pool.acquire().sync().getNow();
+        if (exclusive) {
+            pool.release(client);
+        }
+        return client;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            new Runner(new OptionsBuilder().include(PoolContentionBenchmark.class.getSimpleName())
+                    .threads(threads).build()).run();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.apache9.nedis.benchmark;
+
+import static com.github.apache9.nedis.util.NedisUtils.toBytes;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.apache9.nedis.NedisClient;
+import com.github.apache9.nedis.NedisClientPool;
+import com.github.apache9.nedis.NedisClientPoolBuilder;
+import com.github.apache9.nedis.RedisServer;
+import com.github.apache9.nedis.TestUtils;
+import com.github.apache9.nedis.util.NedisUtils;
+
+/**
+ * Compare the latency and throughput of the NIO and the native epoll transport against a local
+ * redis-server. The epoll transport is skipped if it is not available.
+ * <p>
+ * Run {@link #main(String[])} to run it.
+ * 
+ * @author Apache9
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({
+    Mode.Throughput, Mode.SampleTime
+})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final byte[] KEY = toBytes("key");
+
+    private static final byte[] VALUE = toBytes("value");
+
+    @Param({
+        "nio", "epoll"
+    })
+    public String transport;
+
+    private RedisServer server;
+
+    private EventLoopGroup group;
+
+    private NedisClientPool pool;
+
+    private NedisClient client;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        Class<? extends Channel> channelClass;
+        if (transport.equals("epoll")) {
+            if (!Epoll.isAvailable()) {
+                throw new IllegalStateException("epoll is not available",
+                        Epoll.unavailabilityCause());
+            }
+            group = new EpollEventLoopGroup();
+            channelClass = EpollSocketChannel.class;
+        } else {
+            group = new NioEventLoopGroup();
+            channelClass = NioSocketChannel.class;
+        }
+        int port = TestUtils.probeFreePort();
+        server = new RedisServer(port);
+        server.start();
+        TestUtils.waitUntilRedisUp(port);
+        pool = NedisClientPoolBuilder.builder().group(group).channel(channelClass)
+                .remoteAddress("127.0.0.1", port).build();
+        client = NedisUtils.newPooledClient(pool);
+        client.set(KEY, VALUE).sync();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.close().sync();
+        group.shutdownGracefully().sync();
+        server.stop();
+    }
+
+    @Benchmark
+    public byte[] get() throws InterruptedException {
+        return client.get(KEY).sync().getNow();
+    }
+
+    @Benchmark
+    public Boolean set() throws InterruptedException {
+        return client.set(KEY, VALUE).sync().getNow();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(TransportBenchmark.class.getSimpleName());
+        if (!Epoll.isAvailable()) {
+            builder.param("transport", "nio");
+        }
+        new Runner(builder.build()).run();
+    }
+}
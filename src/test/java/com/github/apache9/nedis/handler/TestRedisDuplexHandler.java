@@ -0,0 +1,388 @@
+package com.github.apache9.nedis.handler;
+
+import static com.github.apache9.nedis.protocol.RedisCommand.GET;
+import static com.github.apache9.nedis.util.NedisUtils.bytesToString;
+import static com.github.apache9.nedis.util.NedisUtils.toBytes;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.timeout.ReadTimeoutException;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.apache9.nedis.BackPressurePolicy;
+import com.github.apache9.nedis.NedisClient;
+import com.github.apache9.nedis.NedisClientImpl;
+import com.github.apache9.nedis.exception.BackPressureException;
+import com.github.apache9.nedis.exception.DeadlineExceededException;
+import com.github.apache9.nedis.exception.LoadSheddingException;
+import com.github.apache9.nedis.protocol.CommandClass;
+import com.github.apache9.nedis.protocol.TransactionsCommands;
+
+/**
+ * @author Apache9
+ */
+public class TestRedisDuplexHandler {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        channel = new EmbeddedChannel(new RedisDuplexHandler(0L));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finish();
+    }
+
+    private byte[][] get(String key) {
+        return new byte[][] {
+            GET.raw, toBytes(key)
+        };
+    }
+
+    @Test
+    public void testDropBeforeWrite() {
+        Promise<Object> expired = channel.eventLoop().newPromise();
+        ChannelFuture writeFuture = channel.writeAndFlush(new RedisRequest(expired, get("foo"),
+                1L, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1)));
+        assertNull(channel.readOutbound());
+        assertSame(DeadlineExceededException.INSTANCE, expired.cause());
+        // nothing is written
+        assertSame(DeadlineExceededException.INSTANCE, writeFuture.cause());
+
+        Promise<Object> cancelled = channel.eventLoop().newPromise();
+        cancelled.cancel(false);
+        writeFuture = channel.writeAndFlush(new RedisRequest(cancelled, get("foo")));
+        assertNull(channel.readOutbound());
+        assertTrue(writeFuture.cause() instanceof CancellationException);
+
+        // expires with the timeout of the connection
+        channel.pipeline().get(RedisDuplexHandler.class).setTimeoutNs(1L);
+        expired = channel.eventLoop().newPromise();
+        writeFuture = channel.writeAndFlush(new RedisRequest(expired, get("foo"),
+                RedisRequest.CONNECTION_TIMEOUT, System.nanoTime()
+                        - TimeUnit.MILLISECONDS.toNanos(1)));
+        assertNull(channel.readOutbound());
+        assertSame(DeadlineExceededException.INSTANCE, writeFuture.cause());
+        assertSame(DeadlineExceededException.INSTANCE, expired.cause());
+        channel.pipeline().get(RedisDuplexHandler.class).setTimeoutNs(0L);
+
+        Promise<Object> promise = channel.eventLoop().newPromise();
+        RedisRequest req = new RedisRequest(promise, get("foo"), TimeUnit.SECONDS.toNanos(10),
+                System.nanoTime());
+        channel.writeOutbound(req);
+        assertSame(req, channel.readOutbound());
+        channel.writeInbound("bar");
+        assertTrue(promise.isSuccess());
+        assertEquals("bar", promise.getNow());
+    }
+
+    @Test
+    public void testShortTimeoutAfterLongTimeout() throws InterruptedException {
+        EmbeddedChannel channel = new EmbeddedChannel(new RedisDuplexHandler(
+                TimeUnit.SECONDS.toNanos(10)));
+        try {
+            NedisClient client = new NedisClientImpl(channel, null);
+            // arm the timer with the timeout of the connection
+            Future<byte[]> future = client.get(toBytes("foo"));
+            channel.writeInbound(toBytes("v"));
+            assertEquals("v", bytesToString(future.getNow()));
+
+            future = client.withTimeout(5).get(toBytes("foo"));
+            Thread.sleep(20);
+            channel.runPendingTasks();
+            assertTrue(future.cause() instanceof ReadTimeoutException);
+            assertFalse(channel.isOpen());
+        } finally {
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testCancel() {
+        NedisClient client = new NedisClientImpl(channel, null);
+        Future<byte[]> cancelled = client.get(toBytes("foo"));
+        Future<byte[]> future = client.get(toBytes("bar"));
+        assertTrue(cancelled.cancel(false));
+        assertEquals(2, channel.outboundMessages().size());
+        channel.writeInbound(toBytes("v1"));
+        channel.writeInbound(toBytes("v2"));
+        assertTrue(cancelled.isCancelled());
+        assertEquals("v2", bytesToString(future.getNow()));
+    }
+
+    @Test
+    public void testManyInFlight() {
+        // more than the initial capacity of the in-flight ring, with a transaction in the middle
+        NedisClient client = new NedisClientImpl(channel, null);
+        List<Future<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.get(toBytes("k" + i)));
+        }
+        client.multi();
+        Future<byte[]> inTxn = client.get(toBytes("k"));
+        Future<List<Object>> exec = client.exec();
+        for (int i = 20; i < 40; i++) {
+            futures.add(client.get(toBytes("k" + i)));
+        }
+        for (int i = 0; i < 20; i++) {
+            channel.writeInbound(toBytes("v" + i));
+        }
+        channel.writeInbound("OK");
+        channel.writeInbound("QUEUED");
+        channel.writeInbound(Arrays.<Object> asList(toBytes("v")));
+        for (int i = 20; i < 40; i++) {
+            channel.writeInbound(toBytes("v" + i));
+        }
+        for (int i = 0; i < 40; i++) {
+            assertEquals("v" + i, bytesToString(futures.get(i).getNow()));
+        }
+        assertEquals("v", bytesToString(inTxn.getNow()));
+        assertTrue(exec.isSuccess());
+    }
+
+    @Test
+    public void testBackPressure() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RedisDuplexHandler(0L,
+                new InFlightLimiter(1, BackPressurePolicy.FAIL_FAST, 0, 0L)));
+        try {
+            NedisClient client = new NedisClientImpl(channel, null);
+            Future<byte[]> future = client.get(toBytes("foo"));
+            Future<byte[]> rejected = client.get(toBytes("bar"));
+            assertSame(BackPressureException.INSTANCE, rejected.cause());
+            assertEquals(1, channel.outboundMessages().size());
+            channel.writeInbound(toBytes("v1"));
+            assertEquals("v1", bytesToString(future.getNow()));
+            future = client.get(toBytes("bar"));
+            assertEquals(2, channel.outboundMessages().size());
+            channel.writeInbound(toBytes("v2"));
+            assertEquals("v2", bytesToString(future.getNow()));
+        } finally {
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testTxnBackPressure() {
+        InFlightLimiter limiter = new InFlightLimiter(1, BackPressurePolicy.FAIL_FAST, 0, 0L);
+        EmbeddedChannel channel = new EmbeddedChannel(new RedisDuplexHandler(0L, limiter));
+        try {
+            NedisClient client = new NedisClientImpl(channel, null);
+            Future<byte[]> future = client.get(toBytes("foo"));
+            // MULTI is rejected, so the whole transaction fails and nothing of it is written
+            Future<Void> multi = client.multi();
+            Future<Boolean> set = client.set(toBytes("foo"), toBytes("v"));
+            Future<List<Object>> exec = client.exec();
+            assertSame(BackPressureException.INSTANCE, multi.cause());
+            assertSame(BackPressureException.INSTANCE, set.cause());
+            assertSame(BackPressureException.INSTANCE, exec.cause());
+            assertEquals(1, channel.outboundMessages().size());
+            channel.writeInbound(toBytes("v1"));
+            assertEquals("v1", bytesToString(future.getNow()));
+            assertEquals(0, limiter.permits());
+
+            // MULTI is admitted, so the commands after it are written even beyond the limit
+            multi = client.multi();
+            set = client.set(toBytes("foo"), toBytes("v"));
+            exec = client.exec();
+            assertEquals(4, channel.outboundMessages().size());
+            channel.writeInbound("OK");
+            channel.writeInbound(TransactionsCommands.QUEUED);
+            channel.writeInbound(Arrays.<Object> asList("OK"));
+            assertTrue(multi.isSuccess());
+            assertTrue(set.getNow());
+            assertEquals(1, exec.getNow().size());
+            assertEquals(0, limiter.permits());
+
+            // the transaction is over, back to the limit
+            future = client.get(toBytes("foo"));
+            assertSame(BackPressureException.INSTANCE, client.get(toBytes("bar")).cause());
+            assertEquals(5, channel.outboundMessages().size());
+            channel.writeInbound(toBytes("v2"));
+            assertEquals("v2", bytesToString(future.getNow()));
+        } finally {
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testOverflow() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RedisDuplexHandler(0L,
+                new InFlightLimiter(1, BackPressurePolicy.QUEUE, 1, 0L)));
+        try {
+            NedisClient client = new NedisClientImpl(channel, null);
+            Future<byte[]> future1 = client.get(toBytes("foo"));
+            Future<byte[]> future2 = client.get(toBytes("bar"));
+            Future<byte[]> rejected = client.get(toBytes("baz"));
+            assertSame(BackPressureException.INSTANCE, rejected.cause());
+            assertEquals(1, channel.outboundMessages().size());
+            channel.writeInbound(toBytes("v1"));
+            assertEquals("v1", bytesToString(future1.getNow()));
+            // the queued request is written after the first one is done
+            assertEquals(2, channel.outboundMessages().size());
+            channel.writeInbound(toBytes("v2"));
+            assertEquals("v2", bytesToString(future2.getNow()));
+        } finally {
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testAdaptiveFlush() throws InterruptedException {
+        FlushController controller = new FlushController(TimeUnit.MILLISECONDS.toNanos(10), 4);
+        EmbeddedChannel channel = new EmbeddedChannel(new RedisDuplexHandler(0L, null, null,
+                controller));
+        try {
+            NedisClient client = new NedisClientImpl(channel, null);
+            // flush immediately before we know the arrival rate
+            client.get(toBytes("foo"));
+            assertEquals(1, channel.outboundMessages().size());
+            channel.outboundMessages().clear();
+            channel.writeInbound(toBytes("v"));
+
+            // pretend that the requests come in every microsecond
+            for (int i = 0; i < 64; i++) {
+                controller.onWrite(i * 1000L);
+            }
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(client.get(toBytes("foo")));
+                assertTrue(channel.outboundMessages().isEmpty());
+            }
+            // reach the max batch size
+            futures.add(client.get(toBytes("foo")));
+            assertEquals(4, channel.outboundMessages().size());
+            channel.outboundMessages().clear();
+            for (Future<byte[]> future: futures) {
+                channel.writeInbound(toBytes("v"));
+                assertEquals("v", bytesToString(future.getNow()));
+            }
+
+            // flushed by the timer if there are not enough requests
+            client.get(toBytes("foo"));
+            assertTrue(channel.outboundMessages().isEmpty());
+            Thread.sleep(20);
+            channel.runPendingTasks();
+            assertEquals(1, channel.outboundMessages().size());
+            channel.outboundMessages().clear();
+            channel.writeInbound(toBytes("v"));
+
+            // no time left for batching if the round trip time reaches the SLO
+            for (int i = 0; i < 64; i++) {
+                controller.onResponse(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            assertEquals(1, controller.batchSize());
+            client.get(toBytes("foo"));
+            assertEquals(1, channel.outboundMessages().size());
+            channel.outboundMessages().clear();
+            channel.writeInbound(toBytes("v"));
+        } finally {
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testLoadShedding() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        EmbeddedChannel channel = new EmbeddedChannel(new RedisResponseDecoder(budget),
+                new RedisDuplexHandler(0L, null, budget));
+        try {
+            NedisClient client = new NedisClientImpl(channel, null);
+            Future<byte[]> future = client.get(toBytes("foo"));
+            assertEquals(0, budget.usedBytes());
+            // part of a 1000 bytes reply
+            byte[] header = toBytes("$1000\r\n");
+            channel.writeInbound(Unpooled.buffer().writeBytes(header).writeBytes(new byte[750]));
+            assertEquals(header.length + 750, budget.usedBytes());
+
+            assertSame(LoadSheddingException.INSTANCE, client.keys(toBytes("*")).cause());
+            assertSame(LoadSheddingException.INSTANCE, client.get(toBytes("bar")).cause());
+            Future<Boolean> write = client.set(toBytes("bar"), toBytes("v"));
+            assertFalse(write.isDone());
+            // connection and server commands are never shed before writes
+            Future<String> ping = client.ping();
+            assertFalse(ping.isDone());
+
+            channel.writeInbound(Unpooled.buffer().writeBytes(new byte[250]).writeBytes(
+                    toBytes("\r\n")));
+            assertEquals(1000, future.getNow().length);
+            assertEquals(0, budget.usedBytes());
+        } finally {
+            channel.finish();
+        }
+        // a budget smaller than 100 bytes is not truncated to 0
+        assertTrue(new MemoryBudget(50).tryReserve(CommandClass.WRITE, 10));
+    }
+
+    @Test
+    public void testLoadTracking() {
+        InFlightLimiter limiter = new InFlightLimiter(0, BackPressurePolicy.FAIL_FAST, 0, 0L);
+        RedisDuplexHandler handler = new RedisDuplexHandler(0L, limiter);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        try {
+            assertEquals(RedisDuplexHandler.NO_IN_FLIGHT, handler.oldestNanoTime());
+            long nanoTime1 = System.nanoTime();
+            Promise<Object> promise1 = channel.eventLoop().newPromise();
+            assertTrue(limiter.acquire(channel));
+            channel.writeOutbound(new RedisRequest(promise1, get("foo"), 0L, nanoTime1));
+            long nanoTime2 = nanoTime1 + 1;
+            Promise<Object> promise2 = channel.eventLoop().newPromise();
+            assertTrue(limiter.acquire(channel));
+            channel.writeOutbound(new RedisRequest(promise2, get("bar"), 0L, nanoTime2));
+            assertEquals(2, limiter.permits());
+            assertEquals(nanoTime1, handler.oldestNanoTime());
+
+            channel.writeInbound("v1");
+            assertEquals(1, limiter.permits());
+            assertEquals(nanoTime2, handler.oldestNanoTime());
+
+            channel.writeInbound("v2");
+            assertEquals(0, limiter.permits());
+            assertEquals(RedisDuplexHandler.NO_IN_FLIGHT, handler.oldestNanoTime());
+        } finally {
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testSubmitAfterEventLoopShutdown() throws InterruptedException {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        InFlightLimiter limiter = new InFlightLimiter(0, BackPressurePolicy.FAIL_FAST, 0, 0L);
+        MemoryBudget budget = new MemoryBudget(1024 * 1024);
+        NioSocketChannel channel = new NioSocketChannel();
+        channel.pipeline().addLast(new RedisDuplexHandler(0L, limiter, budget));
+        group.register(channel).sync();
+        NedisClient client = new NedisClientImpl(channel, null);
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        assertTrue(group.awaitTermination(5, TimeUnit.SECONDS));
+        // the requests are failed instead of being stuck, and nothing is leaked.
+        for (int i = 0; i < 2; i++) {
+            Future<Boolean> future = client.set(toBytes("k"), toBytes("v"));
+            assertTrue(future.await(5, TimeUnit.SECONDS));
+            assertTrue(future.cause() instanceof RejectedExecutionException);
+            assertEquals(0, limiter.permits());
+            assertEquals(0L, budget.usedBytes());
+        }
+    }
+}